@@ -18,4 +18,17 @@
 
 # If you keep the line number information, uncomment this to
 # hide the original source file name.
-#-renamesourcefileattribute SourceFile
\ No newline at end of file
+#-renamesourcefileattribute SourceFile
+
+# 发布版本移除调试日志的调用（仅在开启minifyEnabled时生效）
+# HACLog的v和d已经由BuildConfig.DEBUG在编译期关闭，这里同时移除参数的准备代码
+# isVerbose在发布版本中恒为false，指定返回值后以其包裹的代码块整体移除（不指定时只会被视为无副作用，调用仍然保留）
+-assumenosideeffects class com.huozige.lab.container.utilities.HACLog {
+    public static void v(...);
+    public static void d(...);
+    public static boolean isVerbose(...) return false;
+}
+-assumenosideeffects class android.util.Log {
+    public static int v(...);
+    public static int d(...);
+}
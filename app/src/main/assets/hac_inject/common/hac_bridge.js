@@ -0,0 +1,74 @@
+(function(){
+    var HAC = window.HAC = window.HAC || {};
+
+    // 等待原生代码兑现的Promise：回调ID -> {resolve, reject}
+    var callbacks = {};
+    var nextId = 1;
+    var statistics = {calls: 0, resolved: 0, rejected: 0};
+
+    /**
+     * 调用JS桥的异步方法，返回Promise
+     * 如：HAC.call("index", "ScanCode").then(function(code){ ... })
+     * 原生方法的名称为method + "Async"，第一个参数为回调ID
+     */
+    HAC.call = function(proxyName, method){
+        var args = Array.prototype.slice.call(arguments, 2);
+
+        // 回调统一由顶层页面接收，框架中的调用转交给顶层页面
+        if(window.top !== window){
+            var topCall = null;
+            try{
+                topCall = window.top.HAC && window.top.HAC.call;
+            }catch(e){
+                // 跨域的顶层页面无法访问
+            }
+            if(typeof topCall !== "function"){
+                // 在本框架中调用时结果只会发给顶层页面，Promise永远不会兑现，因此直接拒绝
+                return Promise.reject(new Error("HAC.call is not supported in cross-origin frames : " + proxyName + "." + method));
+            }
+            return topCall.apply(window.top.HAC, arguments);
+        }
+
+        return new Promise(function(resolve, reject){
+            var proxy = window[proxyName];
+            var asyncMethod = method + "Async";
+            if(!proxy || typeof proxy[asyncMethod] !== "function"){
+                reject(new Error("HAC method not found : " + proxyName + "." + asyncMethod));
+                return;
+            }
+
+            var id = String(nextId++);
+            callbacks[id] = {resolve: resolve, reject: reject};
+            statistics.calls++;
+            try{
+                proxy[asyncMethod].apply(proxy, [id].concat(args));
+            }catch(e){
+                delete callbacks[id];
+                reject(e);
+            }
+        });
+    };
+
+    // 原生代码发来的结果
+    HAC.messageHandlers = HAC.messageHandlers || {};
+    HAC.messageHandlers.callback = function(message){
+        var callback = callbacks[message.id];
+        if(!callback){
+            return;
+        }
+        delete callbacks[message.id];
+
+        if(message.ok){
+            statistics.resolved++;
+            callback.resolve(message.value);
+        }else{
+            statistics.rejected++;
+            callback.reject(new Error(message.error));
+        }
+    };
+
+    HAC.getCallStatistics = function(){
+        var pending = Object.keys(callbacks).length;
+        return {calls: statistics.calls, resolved: statistics.resolved, rejected: statistics.rejected, pending: pending};
+    };
+})();
@@ -0,0 +1,60 @@
+(function(){
+    var HAC = window.HAC = window.HAC || {};
+
+    // 原生代码发来的消息，按类型分发给对应的处理函数
+    HAC.messageHandlers = HAC.messageHandlers || {};
+    HAC.data = {};
+    HAC.channelStatistics = {received: 0, failed: 0};
+
+    HAC.receiveNativeMessage = function(message){
+        HAC.channelStatistics.received++;
+        var handler = HAC.messageHandlers[message.type];
+        if(!handler){
+            HAC.channelStatistics.failed++;
+            console.error("HAC message handler not found : " + message.type);
+            return;
+        }
+        try{
+            handler(message);
+        }catch(e){
+            HAC.channelStatistics.failed++;
+            console.error("HAC message handler failed : " + message.type + " " + e);
+        }
+    };
+
+    // 自定义事件：hac:名称
+    HAC.messageHandlers.event = function(message){
+        window.dispatchEvent(new CustomEvent("hac:" + message.name, {detail: message.detail}));
+    };
+
+    // 大块数据：保存在HAC.data中，同时触发hac:data事件
+    HAC.messageHandlers.data = function(message){
+        HAC.data[message.key] = message.value;
+        window.dispatchEvent(new CustomEvent("hac:data", {detail: {key: message.key, value: message.value}}));
+    };
+
+    // 消息通道只建立在顶层页面
+    if(window.top !== window){
+        return;
+    }
+
+    // 只接受原生代码发来的握手（WebView.postWebMessage的来源为null），每个文档只接受一次，避免页面中的其他框架伪造通道
+    var channelAccepted = false;
+    window.addEventListener("message", function(e){
+        if(e.data !== "hac-channel" || e.source !== null || !e.ports || !e.ports[0]){
+            return;
+        }
+        e.stopImmediatePropagation();
+        if(channelAccepted){
+            return;
+        }
+        channelAccepted = true;
+
+        var port = e.ports[0];
+        port.onmessage = function(m){
+            HAC.receiveNativeMessage(JSON.parse(m.data));
+        };
+        HAC.nativePort = port;
+        port.postMessage(JSON.stringify({type: "ready"}));
+    });
+})();
@@ -0,0 +1,166 @@
+(function(){
+    window.HAC = window.HAC || {};
+
+    // 框架和单元格的缓存，框架加载、卸载或页面跳转后作废
+    var frameCache = {};
+    var cellCache = {};
+    var statistics = {frameHits: 0, frameMisses: 0, cellHits: 0, cellMisses: 0, invalidations: 0};
+
+    HAC.findWindow = function(w, name, allMatch){
+        if(!w || !w.frames){
+            return;
+        }
+        if(w.name === name){
+            allMatch.push(w);
+        }else{
+            for(var i = 0; i< w.frames.length; i++){
+                HAC.findWindow(w.frames[i], name, allMatch);
+            }
+        }
+    };
+
+    HAC.getWindowsByFrameName = function(name){
+        if(!name){
+            return [window];
+        }
+
+        var cached = frameCache[name];
+        if(cached && HAC.isWindowAlive(cached[0], name)){
+            statistics.frameHits++;
+            return cached;
+        }
+
+        statistics.frameMisses++;
+        var frames = [];
+        HAC.findWindow(window, name, frames);
+        if(frames.length > 0){
+            frameCache[name] = frames;
+        }
+        return frames;
+    };
+
+    // 框架被移除或跳转到其他页面后，缓存的引用不再可用
+    HAC.isWindowAlive = function(w, name){
+        try{
+            return !!w && !w.closed && w.name === name && !!w.Forguncy;
+        }catch(e){
+            return false;
+        }
+    };
+
+    // 单元格位置的规范化键，与属性顺序无关
+    HAC.getCellKey = function(cellLocation){
+        return Object.keys(cellLocation).sort().map(function(key){
+            return key + "=" + cellLocation[key];
+        }).join("|");
+    };
+
+    HAC.getCell = function(cellLocation){
+        var currentWindow = window;
+        if(cellLocation.iFrameName){
+            var windows = HAC.getWindowsByFrameName(cellLocation.iFrameName);
+            currentWindow  = windows[0];
+        }
+
+        var page = currentWindow.Forguncy.Page;
+        var pageName = typeof page.getPageName === "function" ? page.getPageName() : undefined;
+        var key = HAC.getCellKey(cellLocation);
+
+        var cached = cellCache[key];
+        if(cached && cached.window === currentWindow && cached.pageName === pageName){
+            statistics.cellHits++;
+            return cached.cell;
+        }
+
+        statistics.cellMisses++;
+        var cell = page.getCellByLocation(cellLocation);
+        if(cell){
+            cellCache[key] = {cell: cell, window: currentWindow, pageName: pageName};
+        }
+        return cell;
+    };
+
+    HAC.setCellValue = function(cellLocation, value){
+        HAC.getCell(cellLocation).setValue(value);
+    };
+
+    // 批量写入：在同一个动画帧内一次性写入，页面只需重新布局一次
+    var pendingWrites = [];
+    var writeScheduled = false;
+
+    HAC.setCellValues = function(pairs){
+        for(var i = 0; i < pairs.length; i++){
+            pendingWrites.push(pairs[i]);
+        }
+        if(!writeScheduled){
+            writeScheduled = true;
+            window.requestAnimationFrame(HAC.flushCellValues);
+        }
+    };
+
+    HAC.flushCellValues = function(){
+        var writes = pendingWrites;
+        pendingWrites = [];
+        writeScheduled = false;
+
+        // 同一单元格多次写入时，只保留最后一次
+        var latest = {};
+        var order = [];
+        for(var i = 0; i < writes.length; i++){
+            var key = HAC.getCellKey(writes[i][0]);
+            if(!(key in latest)){
+                order.push(key);
+            }
+            latest[key] = writes[i];
+        }
+
+        for(var j = 0; j < order.length; j++){
+            var write = latest[order[j]];
+            try{
+                HAC.setCellValue(write[0], write[1]);
+            }catch(e){
+                console.error("HAC.setCellValues failed : " + JSON.stringify(write[0]) + " " + e);
+            }
+        }
+    };
+
+    // 通过消息通道发来的批量写入
+    HAC.messageHandlers = HAC.messageHandlers || {};
+    HAC.messageHandlers.setCellValues = function(message){
+        HAC.setCellValues(message.pairs);
+    };
+
+    HAC.invalidateCache = function(){
+        frameCache = {};
+        cellCache = {};
+        statistics.invalidations++;
+    };
+
+    HAC.getCacheStatistics = function(){
+        return JSON.parse(JSON.stringify(statistics));
+    };
+
+    // 本文档的页面跳转
+    window.addEventListener("hashchange", HAC.invalidateCache);
+    window.addEventListener("popstate", HAC.invalidateCache);
+
+    // 本脚本会注入每个框架，框架加载或卸载时通知顶层页面
+    if(window.top !== window){
+        var notifyTop = function(){
+            try{
+                if(window.top.HAC && window.top.HAC.invalidateCache){
+                    window.top.HAC.invalidateCache();
+                }
+            }catch(e){
+                // 跨域的顶层页面无法访问
+            }
+        };
+        notifyTop();
+        window.addEventListener("load", notifyTop);
+        window.addEventListener("pagehide", notifyTop);
+    }
+
+    console.log("HAC helper is ready.");
+
+    return "版本号：20231020.01";
+})();
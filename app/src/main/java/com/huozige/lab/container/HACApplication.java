@@ -3,6 +3,8 @@ package com.huozige.lab.container;
 import android.app.Application;
 import android.util.Log;
 
+import com.huozige.lab.container.webview.InjectedScriptStore;
+
 import cn.jpush.android.api.JPushInterface;
 import io.realm.Realm;
 import io.realm.RealmConfiguration;
@@ -40,5 +42,10 @@ public class HACApplication extends Application {
 
         Log.v(LOG_TAG,"JPush初始化完成");
 
+        // 在后台加载注入页面的脚本，供所有Activity共用
+        InjectedScriptStore.preload(getAssets());
+
+        Log.v(LOG_TAG,"注入脚本开始加载");
+
     }
 }
@@ -4,6 +4,7 @@ package com.huozige.lab.container;
 import android.annotation.SuppressLint;
 import android.content.Intent;
 import android.content.res.Configuration;
+import android.net.ConnectivityManager;
 import android.net.Uri;
 import android.os.Bundle;
 import android.util.Log;
@@ -17,15 +18,28 @@ import androidx.annotation.NonNull;
 
 import com.huozige.lab.container.platform.AbstractStaticFilesCacheFilter;
 import com.huozige.lab.container.platform.AbstractWebInterop;
+import com.huozige.lab.container.platform.CompositeStaticFilesCacheFilter;
+import com.huozige.lab.container.platform.RuleBasedCacheFilter;
 import com.huozige.lab.container.platform.hzg.HZGCacheFilter;
+import com.huozige.lab.container.platform.hzg.HZGResourcePackFilter;
+import com.huozige.lab.container.platform.hzg.HZGRuntimeCacheFilter;
 import com.huozige.lab.container.platform.hzg.HZGWebInterop;
-import com.huozige.lab.container.proxy.AbstractProxy;
+import com.huozige.lab.container.proxy.AppProxy;
+import com.huozige.lab.container.proxy.ProxyHost;
 import com.huozige.lab.container.proxy.ProxyRegister;
 import com.huozige.lab.container.utilities.LifecycleUtility;
+import com.huozige.lab.container.webview.EntryShellCache;
 import com.huozige.lab.container.webview.HACDownloadListener;
 import com.huozige.lab.container.webview.HACWebChromeClient;
 import com.huozige.lab.container.webview.HACWebView;
 import com.huozige.lab.container.webview.HACWebViewClient;
+import com.huozige.lab.container.webview.ImageVariantCache;
+import com.huozige.lab.container.webview.InjectedScriptStore;
+import com.huozige.lab.container.webview.NavigationPrefetcher;
+import com.huozige.lab.container.webview.StaleWhileRevalidateCache;
+
+import java.io.File;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * 主Activity，主要负责加载浏览器内核
@@ -35,7 +49,7 @@ public class MainActivity extends BaseActivity {
 
     // 构造Web平台相关的策略，用于组合
     AbstractWebInterop _webInterop = new HZGWebInterop();
-    AbstractStaticFilesCacheFilter _cacheFilter = new HZGCacheFilter();
+    AbstractStaticFilesCacheFilter _cacheFilter; // 依赖Assets，在onCreate中创建
 
     HACWebView _webView; // 浏览器内核
 
@@ -45,6 +59,8 @@ public class MainActivity extends BaseActivity {
 
     HACDownloadListener _downloadListener; // 下载分流处理器
 
+    ProxyHost _proxyHost; // JS桥的宿主
+
     ActivityResultLauncher<Intent> _arc4QuickConfig; // 用来弹出配置页面。
 
     static final int MENU_ID_HOME = 0;
@@ -73,8 +89,32 @@ public class MainActivity extends BaseActivity {
 
             // 4. 创建并注册WebViewClient，处理页面事件
             _webViewClient = new HACWebViewClient(this);
+            _cacheFilter = new CompositeStaticFilesCacheFilter(
+                    new RuleBasedCacheFilter(getAssets()), // 通过配置文件定义的缓存规则
+                    new HZGCacheFilter(getAssets()), // 内置的离线缓存
+                    new HZGResourcePackFilter(new File(getFilesDir(), "hzg_resource_packs"), getConfigManager().getResourcePackPath()), // 从服务器下载的离线资源包
+                    new HZGRuntimeCacheFilter(new File(getFilesDir(), "hzg_runtime_cache"), HZGRuntimeCacheFilter.DEFAULT_MAX_BYTES)); // 未内置版本的运行时缓存
             _webViewClient.setStaticFilesCacheFilter(_cacheFilter);
+            StaleWhileRevalidateCache responseCache = new StaleWhileRevalidateCache(new File(getCacheDir(), "swr_cache"), StaleWhileRevalidateCache.DEFAULT_MAX_BYTES, getConfigManager().getSWRUrlPatterns());
+            if (!responseCache.isEnabled()) responseCache = null; // 仅在配置了白名单时启用
+            ImageVariantCache imageCache = new ImageVariantCache(new File(getCacheDir(), "image_variants"), ImageVariantCache.DEFAULT_MAX_BYTES, getResources().getDisplayMetrics().widthPixels); // 按屏幕宽度缩小的图片
+            _webViewClient.setResponseCache(responseCache);
+            String entry = getConfigManager().getEntry();
+            if (getConfigManager().getOfflineFirstEntry() && !entry.isEmpty()) {
+                EntryShellCache entryShellCache = new EntryShellCache(new File(getFilesDir(), "entry_shell"), EntryShellCache.DEFAULT_MAX_BYTES, entry);
+                AtomicBoolean reloaded = new AtomicBoolean(false);
+                entryShellCache.setOnEntryUpdatedListener(() -> runOnUiThread(() -> {
+                    // 入口页面在服务器上发生变化，仍停留在入口页面时重新加载，每次启动最多一次，避免页面内容每次都不同时反复刷新
+                    if (entry.equals(_webView.getUrl()) && reloaded.compareAndSet(false, true)) _webView.reload();
+                }));
+                _webViewClient.setEntryShellCache(entryShellCache);
+            }
+            _webViewClient.setImageCache(imageCache);
+            _webViewClient.setPrefetcher(new NavigationPrefetcher(new File(getFilesDir(), "navigation_model.json"), NavigationPrefetcher.DEFAULT_BUDGET_BYTES, getSystemService(ConnectivityManager.class), responseCache, imageCache)); // 基于跳转历史的预取
             _webView.setWebViewClient(_webViewClient);
+            InjectedScriptStore.getInstance(getAssets()).getScriptAsync(_webInterop.getPlatformName(), script -> runOnUiThread(() -> {
+                if (!isDestroyed()) _webViewClient.installInjectedScripts(_webView, script);
+            })); // 在每个文档起始时注入辅助脚本，脚本尚未加载完成时不等待
 
             // 5. 创建并注册WebChromeClient，处理浏览器事件
             _webChromeClient = new HACWebChromeClient(this);
@@ -89,15 +129,11 @@ public class MainActivity extends BaseActivity {
 
             // 8. 使用WebView初始化WebInterop，处理和HTML的交互
             _webInterop.setWebView(_webView);
+            _webViewClient.setWebInterop(_webInterop);
 
-            // 9. 创建和初始化JS代理
-            for (AbstractProxy br : ProxyRegister.getInstance().getAllProxies()
-            ) {
-                br.setConfigManager(getConfigManager()); // 配置接口
-                br.setInterop(_webInterop); // WebInterop
-                _webView.addJavascriptInterface(br,br.getName()); // 注册到浏览器
-                br.onActivityCreated(); // 初始化以当前Activity为上下文的启动器，这一操作仅允许在当前阶段调用，否则会出错
-            }
+            // 9. 注册JS代理，代理在页面第一次调用时才创建和初始化
+            _proxyHost = new ProxyHost(_webInterop, getConfigManager(), ProxyRegister.getInstance());
+            _proxyHost.install(_webView);
 
             // 10. 初始化启动器
             _webChromeClient.registryLaunchersOnCreated(); // ChromeClient的初始化
@@ -130,6 +166,16 @@ public class MainActivity extends BaseActivity {
     @Override
     public void onDestroy() {
 
+        Log.v(LOG_TAG, "脚本队列统计：" + _webInterop.getScriptQueueStatistics());
+        Log.v(LOG_TAG, "消息通道统计：" + _webInterop.getMessageChannelStatistics());
+
+        // 通知已创建的JS桥
+        if (_proxyHost != null) {
+            Log.v(LOG_TAG, "JS桥统计：" + _proxyHost.getStatistics());
+            AppProxy.dumpBridgeStatsInBackground(_proxyHost, new File(getFilesDir(), AppProxy.BRIDGE_STATS_FILE)); // 在后台导出调用统计，用于离线分析
+            _proxyHost.onActivityDestroy();
+        }
+
         // 销毁浏览器
         _webView.removeAllViews();
         _webView.destroy();
@@ -284,12 +330,7 @@ public class MainActivity extends BaseActivity {
             return;
         }
 
-        // 依次分发给所有JS桥
-        for (AbstractProxy br :
-                ProxyRegister.getInstance().getAllProxies()) {
-            if (br.processActivityResult(requestCode, resultCode, data)) {
-                break;
-            }
-        }
+        // 依次分发给已创建的JS桥
+        if (_proxyHost != null) _proxyHost.processActivityResult(requestCode, resultCode, data);
     }
 }
\ No newline at end of file
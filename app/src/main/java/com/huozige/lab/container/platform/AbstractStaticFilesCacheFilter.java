@@ -2,6 +2,10 @@ package com.huozige.lab.container.platform;
 
 import android.net.Uri;
 
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
 /**
  * 判断是否使用缓存的接口
  */
@@ -9,21 +13,47 @@ public abstract class AbstractStaticFilesCacheFilter {
 
     public abstract CacheHint filter(Uri url);
 
+    /**
+     * 从请求中识别服务器的版本标识（如平台版本号），用于在服务器升级后作废其他缓存
+     *
+     * @param url 原始URL
+     * @return 版本标识，无法识别时返回空引用
+     */
+    public String getVersionStamp(Uri url) {
+        return null;
+    }
+
     /**
      * 缓存策略
+     * 过滤器可能会预先构建并复用该对象，调用方不应修改其内容
      */
     public static class CacheHint{
 
+        /**
+         * 缓存文件位于APK的Assets中
+         */
+        public static final int STORAGE_ASSETS = 0;
+
+        /**
+         * 缓存文件位于应用私有存储中
+         */
+        public static final int STORAGE_FILES = 1;
+
         /**
          * 文件名
          */
         public String FileName;
 
         /**
-         * 用于缓存的本地文件路径（Assets下）
+         * 用于缓存的本地文件路径（Assets下，或应用私有存储中的绝对路径）
          */
         public String LocalFilePath;
 
+        /**
+         * 本地文件的存储位置
+         */
+        public int Storage = STORAGE_ASSETS;
+
         /**
          * MIME
          */
@@ -33,7 +63,78 @@ public abstract class AbstractStaticFilesCacheFilter {
          * 编码方式
          */
         public String Encoding;
-    }
-}
 
+        /**
+         * 本地文件是否以gzip预先压缩，返回给浏览器前需要解压
+         */
+        public boolean Gzipped;
+
+        /**
+         * 文件内容的长度（未压缩），未知时为-1
+         */
+        public long Length = -1;
 
+        /**
+         * 文件内容的标识，用作ETag，未知时为空引用
+         */
+        public String ETag;
+
+        /**
+         * 文件的最后修改时间（毫秒），未知时为0
+         */
+        public long LastModified;
+
+        /**
+         * 扩展名 -> MIME
+         */
+        static final Map<String, String> MIME_TABLE = new HashMap<>();
+
+        static {
+            // 文本
+            MIME_TABLE.put("css", "text/css");
+            MIME_TABLE.put("js", "application/x-javascript");
+            MIME_TABLE.put("mjs", "application/x-javascript");
+            MIME_TABLE.put("json", "application/json");
+            MIME_TABLE.put("map", "application/json");
+            MIME_TABLE.put("xml", "text/xml");
+            MIME_TABLE.put("html", "text/html");
+            MIME_TABLE.put("htm", "text/html");
+            MIME_TABLE.put("txt", "text/plain");
+
+            // 图片
+            MIME_TABLE.put("jpg", "image/jpeg");
+            MIME_TABLE.put("jpeg", "image/jpeg");
+            MIME_TABLE.put("png", "image/png");
+            MIME_TABLE.put("gif", "image/gif");
+            MIME_TABLE.put("webp", "image/webp");
+            MIME_TABLE.put("svg", "image/svg+xml");
+            MIME_TABLE.put("ico", "image/x-icon");
+
+            // 字体
+            MIME_TABLE.put("woff", "font/woff");
+            MIME_TABLE.put("woff2", "font/woff2");
+            MIME_TABLE.put("ttf", "font/ttf");
+            MIME_TABLE.put("otf", "font/otf");
+            MIME_TABLE.put("eot", "application/vnd.ms-fontobject");
+
+            // 其他
+            MIME_TABLE.put("wasm", "application/wasm");
+        }
+
+        /**
+         * 根据文件名推断MIME
+         *
+         * @param fileName 文件名
+         * @return MIME，无法推断时为text/plain
+         */
+        public static String guessMIME(String fileName) {
+
+            if (fileName == null) return "text/plain";
+
+            String ext = fileName.substring(fileName.lastIndexOf('.') + 1).toLowerCase(Locale.ROOT);
+            String mime = MIME_TABLE.get(ext);
+
+            return mime == null ? "text/plain" : mime; // 默认值
+        }
+    }
+}
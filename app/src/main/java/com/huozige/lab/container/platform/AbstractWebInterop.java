@@ -1,12 +1,29 @@
 package com.huozige.lab.container.platform;
 
-import android.util.Log;
+import android.net.Uri;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.view.Choreographer;
+import android.webkit.WebMessage;
+import android.webkit.WebMessagePort;
 import android.webkit.WebView;
 
 import androidx.appcompat.app.AppCompatActivity;
 
+import com.alibaba.fastjson.JSONObject;
+import com.huozige.lab.container.utilities.HACLog;
+import com.huozige.lab.container.utilities.JsValueMarshaller;
 import com.huozige.lab.container.utilities.PermissionsUtility;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
 /**
  * 与HTML元素直接交互的操作接口
  */
@@ -16,6 +33,50 @@ public abstract class AbstractWebInterop {
 
     protected WebView webView; // 浏览器内核
 
+    // 等待执行的脚本和等待发送的消息，按加入的顺序在下一帧统一处理
+    private final Queue<Pending> _pending = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean _flushScheduled = new AtomicBoolean(false);
+    private final Choreographer.FrameCallback _flushCallback = frameTimeNanos -> flushScripts();
+    private volatile long _firstQueuedAt; // 本批次第一段脚本的入队时间
+
+    // 脚本队列的统计信息
+    private final AtomicInteger _queueDepth = new AtomicInteger();
+    private final AtomicInteger _maxQueueDepth = new AtomicInteger();
+    private final AtomicLong _flushCount = new AtomicLong();
+    private final AtomicLong _flushedScripts = new AtomicLong();
+    private final AtomicLong _totalFlushLatency = new AtomicLong();
+    private final AtomicLong _maxFlushLatency = new AtomicLong();
+
+    /**
+     * 建立消息通道时发给页面的消息，页面上的注入脚本据此识别端口
+     */
+    static final String CHANNEL_INIT_MESSAGE = "hac-channel";
+
+    static final String MESSAGE_TYPE_EVENT = "event";
+    static final String MESSAGE_TYPE_DATA = "data";
+
+    // 与页面之间的消息通道，只在UI线程中访问端口
+    private WebMessagePort _nativePort;
+    private volatile boolean _channelReady = false;
+
+    // 消息通道的统计信息
+    private final AtomicLong _postedMessages = new AtomicLong();
+    private final AtomicLong _postedBytes = new AtomicLong();
+    private final AtomicLong _fallbackMessages = new AtomicLong(); // 以脚本发送的消息：通道未就绪，或同一批次中有脚本
+
+    /**
+     * 队列中的一项：脚本或消息
+     */
+    private static class Pending {
+        final String Script; // 脚本，消息时为空
+        final String Message; // 消息的JSON，脚本时为空
+
+        Pending(String script, String message) {
+            Script = script;
+            Message = message;
+        }
+    }
+
     /**
      * 设置某个输入类HTML元素的值
      *
@@ -24,13 +85,34 @@ public abstract class AbstractWebInterop {
      */
     public abstract void setInputValue(String identity, Object rawValue) throws IllegalStateException;
 
+    /**
+     * 批量设置多个输入类HTML元素的值
+     * 默认逐个设置，支持批量写入的平台应重写，以便页面一次性完成更新
+     *
+     * @param values HTML元素的标识 -> 需要设置的值，按顺序写入
+     */
+    public void setInputValues(Map<String, Object> values) throws IllegalStateException {
+        for (Map.Entry<String, Object> value : values.entrySet()) {
+            setInputValue(value.getKey(), value.getValue());
+        }
+    }
+
+    /**
+     * 获取平台名称，对应Assets中hac_inject下需要注入页面的脚本目录
+     *
+     * @return 平台名称，默认只注入通用脚本
+     */
+    public String getPlatformName() {
+        return "common";
+    }
+
     /**
      * 向浏览器输出日志，供调试使用
      *
      * @param logContent 日志的内容
      */
     public void writeLogIntoConsole(String logContent) {
-        executeJavaScript("console.log('" + removeJSKeyWords(logContent) + "')");
+        executeJavaScript("console.log(" + JsValueMarshaller.toLiteral(logContent) + ");");
     }
 
     /**
@@ -39,112 +121,220 @@ public abstract class AbstractWebInterop {
      * @param logContent 日志的内容
      */
     public void writeErrorIntoConsole(String logContent) {
-        executeJavaScript("console.error('" + removeJSKeyWords(logContent) + "')");
+        executeJavaScript("console.error(" + JsValueMarshaller.toLiteral(logContent) + ");");
     }
 
     /**
      * 在浏览器执行JavaScript语句
+     * 脚本先进入队列，在下一帧统一执行，避免频繁调用时向主线程投递大量的小任务
      *
      * @param jsSegment 自定义脚本
      */
     public void executeJavaScript(String jsSegment) {
-        getActivityContext().runOnUiThread(() -> webView.evaluateJavascript(jsSegment,(result)-> Log.v(LOG_TAG, "在浏览器执行脚本完成：" + jsSegment +" >> "+ result)));
+        enqueue(new Pending(jsSegment, null));
+    }
 
-        Log.v(LOG_TAG, "开始在浏览器中执行脚本：" + jsSegment);
+    /**
+     * 将脚本或消息加入队列，并安排在下一帧处理
+     */
+    private void enqueue(Pending item) {
+        _pending.add(item);
+
+        int depth = _queueDepth.incrementAndGet();
+        _maxQueueDepth.accumulateAndGet(depth, Math::max);
+
+        scheduleFlush();
     }
 
     /**
-     * 去掉JavaScript的关键字，替换为HTML编码
+     * 安排在下一帧执行队列中的脚本和消息，每帧只安排一次
+     */
+    private void scheduleFlush() {
+        if (_flushScheduled.compareAndSet(false, true)) {
+            _firstQueuedAt = SystemClock.elapsedRealtime();
+            if (Looper.myLooper() == Looper.getMainLooper()) {
+                Choreographer.getInstance().postFrameCallback(_flushCallback);
+            } else {
+                getActivityContext().runOnUiThread(() -> Choreographer.getInstance().postFrameCallback(_flushCallback));
+            }
+        }
+    }
+
+    /**
+     * 在UI线程中按加入的顺序处理队列中的全部脚本和消息
+     * 每段脚本单独调用一次evaluateJavascript，不经过eval，不受页面CSP（缺少unsafe-eval）的限制，出错时也不会影响其他脚本
+     * evaluateJavascript与消息通道相互独立，无法保证两者之间的顺序，因此批次中有脚本时，消息同样转换为脚本执行；
+     * 只有消息的批次在通道就绪时通过通道发送。同一批次内，页面收到的顺序与加入队列的顺序一致
+     */
+    private void flushScripts() {
+        _flushScheduled.set(false);
+
+        List<Pending> batch = new ArrayList<>();
+        boolean hasScript = false;
+        Pending item;
+        while ((item = _pending.poll()) != null) {
+            batch.add(item);
+            if (item.Script != null) hasScript = true;
+        }
+        int count = batch.size();
+        _queueDepth.addAndGet(-count);
+        if (count == 0) return;
+
+        long latency = SystemClock.elapsedRealtime() - _firstQueuedAt;
+        _flushCount.incrementAndGet();
+        _flushedScripts.addAndGet(count);
+        _totalFlushLatency.addAndGet(latency);
+        _maxFlushLatency.accumulateAndGet(latency, Math::max);
+
+        WebMessagePort port = _channelReady && !hasScript ? _nativePort : null;
+        if (port != null) {
+            for (Pending message : batch) {
+                port.postMessage(new WebMessage(message.Message));
+            }
+            return;
+        }
+
+        // 相邻的消息合并为一次执行，处理函数的异常由HAC.receiveNativeMessage捕获
+        StringBuilder messages = new StringBuilder();
+        for (Pending pending : batch) {
+            if (pending.Message != null) {
+                _fallbackMessages.incrementAndGet();
+                messages.append(toMessageScript(pending.Message)).append('\n');
+                continue;
+            }
+            if (messages.length() > 0) {
+                webView.evaluateJavascript(messages.toString(), null);
+                messages.setLength(0);
+            }
+            webView.evaluateJavascript(pending.Script, null);
+        }
+        if (messages.length() > 0) webView.evaluateJavascript(messages.toString(), null);
+
+        if (HACLog.isVerbose(LOG_TAG)) {
+            HACLog.v(LOG_TAG, "在浏览器执行脚本，共{}段，延迟{}ms", count, latency);
+        }
+    }
+
+    /**
+     * 向页面发送消息，与脚本进入同一个队列，保持调用的顺序
+     * 处理队列时消息通道已就绪、且同一批次中没有脚本则通过通道发送，否则以脚本的形式执行
+     * 消息为JSON对象，type属性决定页面上的处理函数（HAC.messageHandlers）
      *
-     * @param str 原始字符串
-     * @return 可以直接拼接到JS的字符串
-     */
-    private String removeJSKeyWords(String str) {
-
-        int length = str.length();
-        int newLength = length;
-        boolean someCharacterEscaped = false;
-        for (int i = 0; i < length; i++) {
-            char c = str.charAt(i);
-            int cint = 0xffff & c;
-            if (cint < 32)
-                switch (c) {
-                    case 11:
-                    default:
-                        newLength--;
-                        someCharacterEscaped = true;
-                        break;
-
-                    case '\t':
-                    case '\n':
-                    case '\f':
-                    case '\r':
-                        break;
-                }
-            else
-                switch (c) {
-                    case '"':
-                        newLength += 5;
-                        someCharacterEscaped = true;
-                        break;
-
-                    case '&':
-                    case '\'':
-                        newLength += 4;
-                        someCharacterEscaped = true;
-                        break;
-
-                    case '<':
-                    case '>':
-                        newLength += 3;
-                        someCharacterEscaped = true;
-                        break;
-                }
+     * @param message 消息
+     */
+    public void postMessage(JSONObject message) {
+        postMessage(message.toJSONString());
+    }
+
+    /**
+     * 向页面发送已序列化的消息，供自行拼接JSON的平台使用
+     *
+     * @param json 消息的JSON文本
+     */
+    public void postMessage(String json) {
+        _postedMessages.incrementAndGet();
+        _postedBytes.addAndGet(json.length());
+        enqueue(new Pending(null, json));
+    }
+
+    /**
+     * 向页面发送自定义事件，页面上触发hac:名称事件
+     *
+     * @param name   事件名称
+     * @param detail 事件的数据
+     */
+    public void postEvent(String name, Object detail) {
+        JSONObject message = new JSONObject();
+        message.put("type", MESSAGE_TYPE_EVENT);
+        message.put("name", name);
+        message.put("detail", detail);
+        postMessage(message);
+    }
+
+    /**
+     * 向页面发送大块数据，页面上保存在HAC.data中，并触发hac:data事件
+     *
+     * @param key   数据的键
+     * @param value 数据
+     */
+    public void postData(String key, Object value) {
+        JSONObject message = new JSONObject();
+        message.put("type", MESSAGE_TYPE_DATA);
+        message.put("key", key);
+        message.put("value", value);
+        postMessage(message);
+    }
+
+    /**
+     * 建立与页面的消息通道，在页面加载完成后于UI线程调用
+     * 页面上的注入脚本收到端口后回复ready，此后的消息通过通道发送
+     * 端口只发给指定来源的顶层页面；页面上的脚本每个文档只接受一次端口，因此同一个文档只建立一次，直到closeMessageChannel
+     *
+     * @param targetUrl 允许接收端口的页面地址（通常为入口页面），只使用其来源（协议、主机和端口）；为空或无效时不建立通道，消息以脚本的形式发送
+     */
+    public void openMessageChannel(String targetUrl) {
+        if (_nativePort != null) return; // 当前文档已经建立过通道
+
+        Uri target = targetUrl == null || targetUrl.isEmpty() ? null : Uri.parse(targetUrl);
+        if (target == null || target.getScheme() == null || target.getEncodedAuthority() == null) {
+            HACLog.w(LOG_TAG, "No valid origin for message channel : {}", targetUrl);
+            return;
         }
-        if (!someCharacterEscaped)
-            return str;
-
-        StringBuilder sb = new StringBuilder(newLength);
-        for (int i = 0; i < length; i++) {
-            char c = str.charAt(i);
-            int cint = 0xffff & c;
-            if (cint < 32)
-                switch (c) {
-                    case '\t':
-                    case '\n':
-                    case '\f':
-                    case '\r':
-                        sb.append(c);
-                        break;
-                }
-            else
-                switch (c) {
-                    case '"':
-                        sb.append("&quot;");
-                        break;
-
-                    case '\'':
-                        sb.append("&apos;");
-                        break;
-
-                    case '&':
-                        sb.append("&amp;");
-                        break;
-
-                    case '<':
-                        sb.append("&lt;");
-                        break;
-
-                    case '>':
-                        sb.append("&gt;");
-                        break;
-
-                    default:
-                        sb.append(c);
-                        break;
+        Uri targetOrigin = Uri.parse(target.getScheme() + "://" + target.getEncodedAuthority());
+
+        WebMessagePort[] ports = webView.createWebMessageChannel();
+        _nativePort = ports[0];
+        _nativePort.setWebMessageCallback(new WebMessagePort.WebMessageCallback() {
+            @Override
+            public void onMessage(WebMessagePort port, WebMessage message) {
+                if (port == _nativePort && message.getData() != null && message.getData().contains("\"ready\"")) {
+                    _channelReady = true;
+                    HACLog.v(LOG_TAG, "消息通道已就绪");
                 }
+            }
+        });
+        webView.postWebMessage(new WebMessage(CHANNEL_INIT_MESSAGE, new WebMessagePort[]{ports[1]}), targetOrigin);
+    }
+
+    /**
+     * 关闭消息通道，在页面开始加载时于UI线程调用
+     */
+    public void closeMessageChannel() {
+        _channelReady = false;
+        if (_nativePort != null) {
+            _nativePort.close();
+            _nativePort = null;
         }
-        return sb.toString();
+    }
+
+    /**
+     * 将消息转换为脚本，作为消息通道不可用时的备用方案
+     */
+    private static String toMessageScript(String json) {
+        return "HAC.receiveNativeMessage(" + json + ");";
+    }
+
+    /**
+     * 获取消息通道的统计信息，用于日志
+     */
+    public String getMessageChannelStatistics() {
+        return "ready=" + _channelReady
+                + ", messages=" + _postedMessages.get()
+                + ", bytes=" + _postedBytes.get()
+                + ", fallbacks=" + _fallbackMessages.get();
+    }
+
+    /**
+     * 获取脚本队列的统计信息，用于日志
+     */
+    public String getScriptQueueStatistics() {
+        long flushes = _flushCount.get();
+        return "flushes=" + flushes
+                + ", scripts=" + _flushedScripts.get()
+                + ", depth=" + _queueDepth.get()
+                + ", maxDepth=" + _maxQueueDepth.get()
+                + ", avgLatencyMs=" + (flushes == 0 ? 0 : _totalFlushLatency.get() / flushes)
+                + ", maxLatencyMs=" + _maxFlushLatency.get();
     }
 
     /**
@@ -166,6 +356,17 @@ public abstract class AbstractWebInterop {
         PermissionsUtility.asyncRequirePermissions(webView.getContext(), permissions, successAction);
     }
 
+    /**
+     * 申请多个敏感权限
+     *
+     * @param permissions   需要申请的权限
+     * @param successAction 申请成功后执行的动作
+     * @param failureAction 被拒绝或只申请到部分权限后执行的动作
+     */
+    public void requirePermission(String[] permissions, Runnable successAction, Runnable failureAction) {
+        PermissionsUtility.asyncRequirePermissions(webView.getContext(), permissions, successAction, failureAction);
+    }
+
     /**
      * 初始化浏览器
      * @param webView 浏览器实例
@@ -0,0 +1,55 @@
+package com.huozige.lab.container.platform;
+
+import android.net.Uri;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 将多个缓存过滤器按顺序组合，返回第一个命中的缓存
+ */
+public class CompositeStaticFilesCacheFilter extends AbstractStaticFilesCacheFilter {
+
+    private final List<AbstractStaticFilesCacheFilter> _filters;
+
+    /**
+     * 构造函数
+     *
+     * @param filters 按优先级排列的缓存过滤器
+     */
+    public CompositeStaticFilesCacheFilter(AbstractStaticFilesCacheFilter... filters) {
+        _filters = Collections.unmodifiableList(new ArrayList<>(Arrays.asList(filters)));
+    }
+
+    /**
+     * 依次执行各个过滤器
+     *
+     * @param url 原始URL
+     * @return 第一个命中的缓存或空引用
+     */
+    @Override
+    public CacheHint filter(Uri url) {
+        for (int i = 0; i < _filters.size(); i++) {
+            CacheHint hint = _filters.get(i).filter(url);
+            if (hint != null) return hint;
+        }
+        return null;
+    }
+
+    /**
+     * 返回第一个识别出的版本标识
+     *
+     * @param url 原始URL
+     * @return 版本标识或空引用
+     */
+    @Override
+    public String getVersionStamp(Uri url) {
+        for (int i = 0; i < _filters.size(); i++) {
+            String stamp = _filters.get(i).getVersionStamp(url);
+            if (stamp != null) return stamp;
+        }
+        return null;
+    }
+}
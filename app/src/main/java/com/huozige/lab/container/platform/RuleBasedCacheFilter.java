@@ -0,0 +1,293 @@
+package com.huozige.lab.container.platform;
+
+import android.content.res.AssetFileDescriptor;
+import android.content.res.AssetManager;
+import android.net.Uri;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.alibaba.fastjson.JSONArray;
+import com.alibaba.fastjson.JSONObject;
+import com.huozige.lab.container.BuildConfig;
+
+import org.apache.commons.io.IOUtils;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 通过配置文件定义的缓存过滤器，适用于活字格以外的Web应用
+ * 规则从Assets下的hac_cache_rules.json加载，格式如下：
+ * {
+ * "rules": [
+ * {"host": "erp.example.com", "pathPrefix": "/static/", "assetsPrefix": "erp_cache/", "mime": "text/css"}
+ * ]
+ * }
+ * host和mime可省略，分别表示匹配所有主机、根据文件名推断MIME
+ * 请求的PATH以pathPrefix开头时，将其替换为assetsPrefix，得到Assets下的文件路径；多条规则同时匹配时，按规则的顺序依次查找，以第一个有对应文件的规则为准
+ * 首次使用时将规则编译为前缀树，并遍历各规则的本地目录，只有确实存在的文件才会命中；文件的长度和ETag在遍历时确定
+ */
+public class RuleBasedCacheFilter extends AbstractStaticFilesCacheFilter {
+
+    static final String LOG_TAG = "HAC_RuleBasedCacheFilter";
+
+    /**
+     * 规则文件在Assets下的路径
+     */
+    public static final String RULES_PATH = "hac_cache_rules.json";
+
+    private final AssetManager _assets;
+
+    // 进程内共享的编译结果，构建完成后只读
+    private static volatile Compiled __compiled;
+
+    /**
+     * 一条缓存规则
+     */
+    static class Rule {
+        int Order; // 在规则文件中的顺序，越小越优先
+        String Host; // 为空意味着匹配所有主机
+        String PathPrefix;
+        String AssetsPrefix; // 以“/”结尾
+        String MIME; // 为空意味着根据文件名推断
+    }
+
+    /**
+     * 前缀树的节点，按PATH中的字符逐级向下
+     */
+    static class TrieNode {
+        final Map<Character, TrieNode> Children = new HashMap<>();
+        Rule[] Rules; // 以当前节点结尾的规则
+    }
+
+    /**
+     * 编译后的规则
+     */
+    static class Compiled {
+        final TrieNode Root = new TrieNode();
+        final Map<String, CacheHint> Files = new HashMap<>(); // Assets下的路径 -> 缓存信息
+    }
+
+    /**
+     * 构造函数
+     *
+     * @param assets 存放规则和缓存文件的Assets
+     */
+    public RuleBasedCacheFilter(AssetManager assets) {
+        _assets = assets;
+    }
+
+    /**
+     * 执行缓存检查
+     *
+     * @param url 原始URL
+     * @return 命中的缓存或空引用
+     */
+    @Override
+    public CacheHint filter(Uri url) {
+
+        Compiled compiled = getCompiled();
+        if (compiled.Root.Children.isEmpty()) return null; // 没有任何规则
+
+        String path = url.getPath();
+        if (path == null) return null;
+        String host = url.getHost();
+
+        // 沿前缀树向下，找出全部匹配的规则
+        List<Rule> matched = null;
+        TrieNode node = compiled.Root;
+        for (int i = 0; i < path.length() && node != null; i++) {
+            node = node.Children.get(path.charAt(i));
+            if (node != null && node.Rules != null) {
+                for (Rule rule : node.Rules) {
+                    if (rule.Host == null || rule.Host.equalsIgnoreCase(host)) {
+                        if (matched == null) matched = new ArrayList<>(2);
+                        matched.add(rule);
+                    }
+                }
+            }
+        }
+
+        if (matched == null) return null;
+
+        // 按规则的顺序查找，靠前的规则没有对应的文件时继续查找下一条
+        if (matched.size() > 1) matched.sort(Comparator.comparingInt(rule -> rule.Order));
+        for (Rule rule : matched) {
+            CacheHint hint = compiled.Files.get(rule.AssetsPrefix + path.substring(rule.PathPrefix.length()));
+            if (hint != null) return hint;
+        }
+        return null;
+    }
+
+    /**
+     * 获取编译后的规则，首次调用时编译
+     */
+    private Compiled getCompiled() {
+        Compiled compiled = __compiled;
+        if (compiled == null) {
+            synchronized (RuleBasedCacheFilter.class) {
+                compiled = __compiled;
+                if (compiled == null) {
+                    compiled = compile(_assets);
+                    __compiled = compiled;
+                }
+            }
+        }
+        return compiled;
+    }
+
+    /**
+     * 加载规则文件，编译为前缀树，并收集各规则对应的本地文件
+     *
+     * @param assets 存放规则和缓存文件的Assets
+     * @return 编译后的规则，没有规则文件时为空的规则集
+     */
+    static Compiled compile(AssetManager assets) {
+
+        long start = SystemClock.elapsedRealtime();
+        Compiled compiled = new Compiled();
+
+        String json;
+        try (InputStream in = assets.open(RULES_PATH)) {
+            json = IOUtils.toString(in, StandardCharsets.UTF_8);
+        } catch (FileNotFoundException e) {
+            return compiled; // 没有配置规则
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Error on loading cache rules : " + e);
+            return compiled;
+        }
+
+        try {
+            JSONArray rules = JSONObject.parseObject(json).getJSONArray("rules");
+            for (int i = 0; rules != null && i < rules.size(); i++) {
+                JSONObject item = rules.getJSONObject(i);
+
+                Rule rule = new Rule();
+                rule.Order = i;
+                rule.Host = item.getString("host");
+                rule.PathPrefix = item.getString("pathPrefix");
+                rule.AssetsPrefix = item.getString("assetsPrefix");
+                rule.MIME = item.getString("mime");
+
+                if (rule.PathPrefix == null || rule.PathPrefix.isEmpty() || rule.AssetsPrefix == null || rule.AssetsPrefix.isEmpty()) {
+                    Log.e(LOG_TAG, "Invalid cache rule skipped : " + item);
+                    continue;
+                }
+                if (!rule.AssetsPrefix.endsWith("/")) rule.AssetsPrefix += "/";
+
+                insert(compiled.Root, rule);
+                collectFiles(assets, rule.AssetsPrefix, rule.MIME, compiled.Files);
+            }
+        } catch (RuntimeException e) {
+            Log.e(LOG_TAG, "Error on parsing cache rules : " + e);
+        }
+
+        Log.v(LOG_TAG, "Cache rules compiled with " + compiled.Files.size() + " files in " + (SystemClock.elapsedRealtime() - start) + "ms");
+
+        return compiled;
+    }
+
+    /**
+     * 将规则插入前缀树
+     */
+    private static void insert(TrieNode root, Rule rule) {
+
+        TrieNode node = root;
+        for (int i = 0; i < rule.PathPrefix.length(); i++) {
+            char c = rule.PathPrefix.charAt(i);
+            TrieNode child = node.Children.get(c);
+            if (child == null) {
+                child = new TrieNode();
+                node.Children.put(c, child);
+            }
+            node = child;
+        }
+
+        if (node.Rules == null) {
+            node.Rules = new Rule[]{rule};
+        } else {
+            Rule[] rules = new Rule[node.Rules.length + 1];
+            System.arraycopy(node.Rules, 0, rules, 0, node.Rules.length);
+            rules[node.Rules.length] = rule;
+            node.Rules = rules;
+        }
+    }
+
+    /**
+     * 递归收集目录下的文件
+     *
+     * @param assets      存放缓存文件的Assets
+     * @param cachePrefix 当前目录在Assets下的路径，以“/”结尾
+     * @param mime        规则指定的MIME，为空意味着根据文件名推断
+     * @param files       收集结果
+     */
+    private static void collectFiles(AssetManager assets, String cachePrefix, String mime, Map<String, CacheHint> files) {
+
+        String[] children;
+        try {
+            children = assets.list(cachePrefix.substring(0, cachePrefix.length() - 1));
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Error on indexing local cache : " + cachePrefix + " Error : " + e);
+            return;
+        }
+        if (children == null) return;
+
+        for (String child : children) {
+            String childPath = cachePrefix + child;
+            String[] grandChildren;
+            try {
+                grandChildren = assets.list(childPath);
+            } catch (IOException e) {
+                grandChildren = null;
+            }
+
+            if (grandChildren != null && grandChildren.length > 0) {
+                // 目录
+                collectFiles(assets, childPath + "/", mime, files);
+            } else if (!files.containsKey(childPath)) {
+                // 文件
+                CacheHint hint = new CacheHint();
+                hint.FileName = child;
+                hint.LocalFilePath = childPath;
+                hint.Encoding = "UTF-8";
+                hint.MIME = mime != null ? mime : CacheHint.guessMIME(child);
+                hint.Length = measure(assets, childPath);
+                if (hint.Length < 0) continue; // 无法读取的文件不参与缓存
+                // Assets只随应用更新，以应用版本、路径和长度作为内容的标识
+                hint.ETag = "\"" + BuildConfig.VERSION_CODE + "-" + Integer.toHexString(childPath.hashCode()) + "-" + Long.toHexString(hint.Length) + "\"";
+                files.put(childPath, hint);
+            }
+        }
+    }
+
+    /**
+     * 获取Assets中文件的长度
+     * 未压缩的文件直接读取描述符中的长度；压缩存放的文件无法打开描述符，改为读取一遍内容
+     *
+     * @param assets 存放缓存文件的Assets
+     * @param path   文件在Assets下的路径
+     * @return 文件的长度，无法读取时为-1
+     */
+    private static long measure(AssetManager assets, String path) {
+
+        try (AssetFileDescriptor fd = assets.openFd(path)) {
+            if (fd.getLength() >= 0) return fd.getLength();
+        } catch (IOException e) {
+            // 压缩存放的文件
+        }
+
+        try (InputStream in = assets.open(path)) {
+            return IOUtils.skip(in, Long.MAX_VALUE);
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Error on measuring local cache : " + path + " Error : " + e);
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package com.huozige.lab.container.platform;
+
+import android.content.res.AssetManager;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 按内容哈希去重的离线缓存清单
+ * 由构建脚本（app/build.gradle中的packOfflineCache）生成，每行记录：版本、类型、相对路径、文件哈希、文件长度、压缩方式，以制表符分隔
+ */
+public class StaticFilesManifest {
+
+    /**
+     * 清单文件在Assets下的路径
+     */
+    public static final String MANIFEST_PATH = "hzg_manifest.tsv";
+
+    /**
+     * 去重后的文件在Assets下的目录
+     */
+    public static final String BLOB_DIR = "hzg_blobs/";
+
+    /**
+     * 以gzip预先压缩的文件
+     */
+    public static final String COMPRESSION_GZIP = "gzip";
+
+    /**
+     * 清单中的一条记录
+     */
+    public static class Entry {
+
+        /**
+         * 平台的版本，如8.0.6.0
+         */
+        public String Version;
+
+        /**
+         * 资源的类型，如Bundle、Scripts
+         */
+        public String Type;
+
+        /**
+         * 相对于该类型资源根目录的路径
+         */
+        public String Path;
+
+        /**
+         * 文件内容的SHA-1
+         */
+        public String Hash;
+
+        /**
+         * 文件长度（未压缩）
+         */
+        public long Size;
+
+        /**
+         * 压缩方式，gzip或identity
+         */
+        public String Compression;
+
+        /**
+         * 获取去重后的文件在Assets下的路径
+         *
+         * @return 文件路径
+         */
+        public String getBlobPath() {
+            return isGzipped() ? BLOB_DIR + Hash + ".gz" : BLOB_DIR + Hash;
+        }
+
+        /**
+         * 是否以gzip预先压缩
+         *
+         * @return 压缩则返回true
+         */
+        public boolean isGzipped() {
+            return COMPRESSION_GZIP.equals(Compression);
+        }
+    }
+
+    /**
+     * 读取清单
+     *
+     * @param assets 存放清单的Assets
+     * @return 清单中的全部记录
+     * @throws IOException 清单不存在或读取失败
+     */
+    public static List<Entry> load(AssetManager assets) throws IOException {
+
+        List<Entry> entries = new ArrayList<>();
+
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(assets.open(MANIFEST_PATH), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split("\t");
+                if (fields.length < 6) continue; // 跳过空行
+
+                Entry entry = new Entry();
+                entry.Version = fields[0];
+                entry.Type = fields[1];
+                entry.Path = fields[2];
+                entry.Hash = fields[3];
+                entry.Size = Long.parseLong(fields[4]);
+                entry.Compression = fields[5];
+                entries.add(entry);
+            }
+        }
+
+        return entries;
+    }
+}
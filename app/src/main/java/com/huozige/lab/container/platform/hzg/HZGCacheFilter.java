@@ -1,12 +1,24 @@
 package com.huozige.lab.container.platform.hzg;
 
+import android.content.res.AssetManager;
 import android.net.Uri;
+import android.os.SystemClock;
 import android.util.Log;
 
 import com.huozige.lab.container.platform.AbstractStaticFilesCacheFilter;
+import com.huozige.lab.container.platform.StaticFilesManifest;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * 活字格专用的缓存过滤器
+ * 启动后首次使用时读取离线缓存清单，构建URL PATH到缓存信息的索引，此后的匹配仅需一次哈希查找
  */
 public class HZGCacheFilter extends AbstractStaticFilesCacheFilter {
 
@@ -20,8 +32,30 @@ public class HZGCacheFilter extends AbstractStaticFilesCacheFilter {
             "8.0.105.0",// 8.1
             "9.0.6.0"}; // 9.0
 
+    /**
+     * URL的PATH模板，参数依次为版本和资源类型（Bundle、Scripts）
+     */
+    final static String URL_PATH_TEMPLATE = "/%s/Resources/%s/";
+
+    /**
+     * 进程内共享的索引，URL PATH -> 缓存信息，构建完成后只读
+     */
+    private static volatile Map<String, CacheHint> __index;
+
+    private final AssetManager _assets;
+
+    /**
+     * 构造函数
+     *
+     * @param assets 存放缓存文件的Assets
+     */
+    public HZGCacheFilter(AssetManager assets) {
+        _assets = assets;
+    }
+
     /**
      * 执行缓存检查
+     * 索引中包含了全部缓存文件，没有命中即意味着没有可用的缓存，不需要额外的负缓存
      *
      * @param url 原始URL
      * @return 命中的缓存或空引用
@@ -29,64 +63,96 @@ public class HZGCacheFilter extends AbstractStaticFilesCacheFilter {
     @Override
     public CacheHint filter(Uri url) {
 
-        // Bundle
-        CacheHint bundle = filterByType(url, "/%s/Resources/Bundle/", "hzg_bundle_cache_%s/");
-        if (bundle != null) return bundle;
+        String path = url.getPath();
+        if (path == null) return null;
+
+        // 通过Path进行查找，可以避免Query的影响
+        return getIndex().get(path);
+    }
 
-        // Scripts
-        return filterByType(url, "/%s/Resources/Scripts/", "hzg_scripts_cache_%s/");
+    /**
+     * 活字格静态资源的PATH中包含版本号，版本变化意味着服务器升级
+     *
+     * @param url 原始URL
+     * @return 活字格版本号或空引用
+     */
+    @Override
+    public String getVersionStamp(Uri url) {
+        return HZGRuntimeCacheFilter.parseVersion(url);
     }
 
     /**
-     * 检查特定PATH的文件请求是否有可用缓存
+     * 获取索引，首次调用时构建
      *
-     * @param url         请求URL
-     * @param originalTpl URL的PATH模板
-     * @param cacheTpl    本地缓存文件的PATH模板
-     * @return 缓存信息或空引用
+     * @return 只读的索引
      */
-    CacheHint filterByType(Uri url, String originalTpl, String cacheTpl) {
-
-        // 依次处理各个版本
-        for (String version : SUPPORTED_VERSIONS
-        ) {
-            // 拼接出该版本的路径
-            String url_path_prefix = String.format(originalTpl, version);
-            String cache_prefix = String.format(cacheTpl, version);
-
-            if (url.getPath().startsWith(url_path_prefix)) {
-
-                // 获取文件名
-                String fileName = url.getLastPathSegment();
-                Log.v(LOG_TAG, "Local cache matched for : " + fileName);
-
-                // 构建返回对象
-                CacheHint result = new CacheHint();
-                result.FileName = fileName;
-                result.LocalFilePath = url.getPath().replace(url_path_prefix, cache_prefix); // 通过Path进行替换，可以避免Query的影响
-                result.Encoding = "UTF-8";
-
-                if (fileName.toLowerCase().endsWith("css")) {
-                    result.MIME = "text/css";
-                } else if (fileName.toLowerCase().endsWith("js")) {
-                    result.MIME = "application/x-javascript";
-                } else if (fileName.toLowerCase().endsWith("json")) {
-                    result.MIME = "application/json";
-                } else if (fileName.toLowerCase().endsWith("xml")) {
-                    result.MIME = "text/xml";
-                } else if (fileName.toLowerCase().endsWith("jpg") || fileName.toLowerCase().endsWith("jpeg")) {
-                    result.MIME = "image/jpeg";
-                } else if (fileName.toLowerCase().endsWith("png")) {
-                    result.MIME = "image/png";
-                } else {
-                    result.MIME = "text/plain"; // 默认值
+    private Map<String, CacheHint> getIndex() {
+        Map<String, CacheHint> index = __index;
+        if (index == null) {
+            synchronized (HZGCacheFilter.class) {
+                index = __index;
+                if (index == null) {
+                    index = buildIndex(_assets);
+                    __index = index;
                 }
+            }
+        }
+        return index;
+    }
+
+    /**
+     * 读取离线缓存清单，为所有支持的版本构建索引
+     * 清单中相同内容的文件指向同一个去重后的文件
+     *
+     * @param assets 存放缓存文件的Assets
+     * @return 只读的索引
+     */
+    static Map<String, CacheHint> buildIndex(AssetManager assets) {
+
+        long start = SystemClock.elapsedRealtime();
+        Map<String, CacheHint> index = new HashMap<>();
+        Set<String> versions = new HashSet<>(Arrays.asList(SUPPORTED_VERSIONS));
+
+        try {
+            for (StaticFilesManifest.Entry entry : StaticFilesManifest.load(assets)) {
+
+                // 仅处理支持的版本
+                if (!versions.contains(entry.Version)) continue;
 
-                return result;
+                // 拼接出该文件的URL PATH
+                String urlPath = String.format(URL_PATH_TEMPLATE, entry.Version, entry.Type) + entry.Path;
+                String fileName = entry.Path.substring(entry.Path.lastIndexOf('/') + 1);
+
+                CacheHint hint = createHint(fileName, entry.getBlobPath());
+                hint.Gzipped = entry.isGzipped();
+                hint.Length = entry.Size;
+                hint.ETag = "\"" + entry.Hash + "\"";
+                index.put(urlPath, hint);
             }
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Error on loading local cache manifest : " + e);
         }
 
-        // 没有匹配的话，返回空引用
-        return null;
+        Log.v(LOG_TAG, "Local cache index built with " + index.size() + " files in " + (SystemClock.elapsedRealtime() - start) + "ms");
+
+        return Collections.unmodifiableMap(index);
+    }
+
+    /**
+     * 构建缓存信息
+     *
+     * @param fileName      文件名
+     * @param localFilePath Assets下的路径
+     * @return 缓存信息
+     */
+    private static CacheHint createHint(String fileName, String localFilePath) {
+
+        CacheHint result = new CacheHint();
+        result.FileName = fileName;
+        result.LocalFilePath = localFilePath;
+        result.Encoding = "UTF-8";
+        result.MIME = CacheHint.guessMIME(fileName);
+
+        return result;
     }
 }
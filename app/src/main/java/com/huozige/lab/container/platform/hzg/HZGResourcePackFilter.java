@@ -0,0 +1,331 @@
+package com.huozige.lab.container.platform.hzg;
+
+import android.net.Uri;
+import android.util.Log;
+
+import com.huozige.lab.container.platform.AbstractStaticFilesCacheFilter;
+
+import org.apache.commons.io.FileUtils;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IllegalFormatException;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * 从活字格服务器下载的离线资源包，位于内置离线缓存和运行时缓存之间
+ * 首次遇到没有内置离线缓存的活字格版本时，在后台下载该版本的资源包（zip，内含Bundle和Scripts两个目录），
+ * 使用服务器提供的SHA-256（资源包路径 + .sha256）校验后解压到应用私有存储，此后该版本的资源直接从本地返回
+ */
+public class HZGResourcePackFilter extends AbstractStaticFilesCacheFilter {
+
+    final static String LOG_TAG = "HAC_HZGResourcePack";
+
+    static final int CONNECT_TIMEOUT = 15 * 1000;
+    static final int READ_TIMEOUT = 60 * 1000;
+
+    static final String CHECKSUM_SUFFIX = ".sha256";
+    static final String TEMP_SUFFIX = ".tmp";
+
+    private static final Set<String> BUNDLED_VERSIONS = new HashSet<>(Arrays.asList(HZGCacheFilter.SUPPORTED_VERSIONS));
+
+    // 所有实例共用一个下载线程，避免同时下载多个资源包
+    private static final ExecutorService __downloader = Executors.newSingleThreadExecutor();
+
+    // 本进程中已经尝试过的版本，失败后不再重试
+    private static final Set<String> __requestedVersions = Collections.newSetFromMap(new ConcurrentHashMap<>());
+
+    // 已解压的资源包索引：版本 -> (URL PATH -> 缓存信息)
+    private static final Map<String, Map<String, CacheHint>> __indexes = new ConcurrentHashMap<>();
+
+    private final File _directory;
+    private final String _packPathTemplate;
+
+    /**
+     * 构造函数
+     *
+     * @param directory        资源包的解压目录，位于应用私有存储中
+     * @param packPathTemplate 资源包在服务器上的路径，%s为活字格版本号，为空或格式无效意味着不下载资源包
+     */
+    public HZGResourcePackFilter(File directory, String packPathTemplate) {
+        _directory = directory;
+        _packPathTemplate = validateTemplate(packPathTemplate);
+    }
+
+    /**
+     * 校验资源包路径的模板，模板来自用户配置，格式无效时在请求中格式化会抛出异常
+     *
+     * @param template 资源包路径的模板
+     * @return 有效的模板，为空或无效时返回空引用，不再下载资源包
+     */
+    static String validateTemplate(String template) {
+
+        if (template == null || template.isEmpty()) return null;
+
+        try {
+            // 必须包含版本号，否则所有版本都会下载同一个资源包
+            if (String.format(template, "1").equals(String.format(template, "2"))) {
+                Log.e(LOG_TAG, "Resource pack path has no version placeholder, downloading disabled : " + template);
+                return null;
+            }
+        } catch (IllegalFormatException e) {
+            Log.e(LOG_TAG, "Invalid resource pack path, downloading disabled : " + template + " Error : " + e);
+            return null;
+        }
+
+        return template;
+    }
+
+    /**
+     * 执行缓存检查，遇到新版本时触发资源包的下载
+     *
+     * @param url 原始URL
+     * @return 命中的缓存或空引用
+     */
+    @Override
+    public CacheHint filter(Uri url) {
+
+        String version = HZGRuntimeCacheFilter.parseVersion(url);
+        if (version == null || BUNDLED_VERSIONS.contains(version)) return null;
+
+        Map<String, CacheHint> index = __indexes.get(version);
+        if (index == null) {
+            index = loadIndex(version, url);
+            if (index == null) return null;
+        }
+
+        return index.get(url.getPath());
+    }
+
+    /**
+     * 加载已解压的资源包，没有资源包时触发下载
+     *
+     * @param version 活字格版本
+     * @param url     首个请求的URL，用于定位服务器
+     * @return 资源包的索引，尚未就绪时返回空引用
+     */
+    private Map<String, CacheHint> loadIndex(String version, Uri url) {
+
+        File packDir = new File(_directory, version);
+        if (packDir.isDirectory()) {
+            synchronized (__indexes) {
+                Map<String, CacheHint> index = __indexes.get(version);
+                if (index == null) {
+                    index = buildIndex(version, packDir);
+                    __indexes.put(version, index);
+                }
+                return index;
+            }
+        }
+
+        if (_packPathTemplate != null && __requestedVersions.add(version)) {
+            String packUrl = url.getScheme() + "://" + url.getEncodedAuthority() + String.format(_packPathTemplate, version);
+            __downloader.execute(() -> downloadPack(version, packUrl, packDir));
+        }
+
+        return null;
+    }
+
+    /**
+     * 遍历已解压的资源包，构建索引
+     *
+     * @param version 活字格版本
+     * @param packDir 解压目录
+     * @return 只读的索引
+     */
+    static Map<String, CacheHint> buildIndex(String version, File packDir) {
+
+        Map<String, CacheHint> index = new HashMap<>();
+        for (File file : FileUtils.listFiles(packDir, null, true)) {
+
+            // 解压目录下的相对路径形如：Bundle/forguncy.js
+            String relative = packDir.toURI().relativize(file.toURI()).getPath();
+
+            CacheHint hint = new CacheHint();
+            hint.FileName = file.getName();
+            hint.LocalFilePath = file.getAbsolutePath();
+            hint.Storage = CacheHint.STORAGE_FILES;
+            hint.Encoding = "UTF-8";
+            hint.MIME = CacheHint.guessMIME(hint.FileName);
+            hint.Length = file.length();
+            hint.LastModified = file.lastModified();
+            hint.ETag = "\"" + version + "-" + Long.toHexString(hint.Length) + "-" + Long.toHexString(hint.LastModified) + "\"";
+            index.put("/" + version + "/Resources/" + relative, hint);
+        }
+
+        Log.v(LOG_TAG, "Resource pack indexed : " + version + " , " + index.size() + " files");
+
+        return Collections.unmodifiableMap(index);
+    }
+
+    /**
+     * 下载、校验并解压资源包
+     *
+     * @param version 活字格版本
+     * @param packUrl 资源包的地址
+     * @param packDir 解压目录
+     */
+    static void downloadPack(String version, String packUrl, File packDir) {
+
+        File tempZip = new File(packDir.getParentFile(), version + ".zip" + TEMP_SUFFIX);
+        File tempDir = new File(packDir.getParentFile(), version + TEMP_SUFFIX);
+
+        try {
+            FileUtils.forceMkdir(packDir.getParentFile());
+
+            // 先获取校验值，服务器没有提供校验值的资源包不予使用
+            String expected = readChecksum(packUrl + CHECKSUM_SUFFIX);
+            if (expected == null) return;
+
+            String actual = download(packUrl, tempZip);
+            if (actual == null) return;
+
+            if (!expected.equalsIgnoreCase(actual)) {
+                Log.e(LOG_TAG, "Resource pack checksum mismatch : " + packUrl + " expected : " + expected + " actual : " + actual);
+                return;
+            }
+
+            // 解压到临时目录，完成后再改名，避免使用不完整的资源包
+            FileUtils.deleteDirectory(tempDir);
+            unzip(tempZip, tempDir);
+            if (!tempDir.renameTo(packDir)) {
+                throw new IOException("Failed to commit resource pack : " + packDir);
+            }
+
+            Log.v(LOG_TAG, "Resource pack is ready : " + version);
+
+        } catch (IOException | NoSuchAlgorithmException e) {
+            Log.e(LOG_TAG, "Error on preparing resource pack : " + packUrl + " Error : " + e);
+        } finally {
+            FileUtils.deleteQuietly(tempZip);
+            FileUtils.deleteQuietly(tempDir);
+        }
+    }
+
+    /**
+     * 读取资源包的SHA-256
+     *
+     * @param checksumUrl 校验文件的地址
+     * @return 十六进制的SHA-256，获取失败时返回空引用
+     */
+    private static String readChecksum(String checksumUrl) throws IOException {
+
+        HttpURLConnection connection = openConnection(checksumUrl);
+        try {
+            if (connection.getResponseCode() != HttpURLConnection.HTTP_OK) {
+                Log.w(LOG_TAG, "Resource pack is not available : " + checksumUrl + " , status : " + connection.getResponseCode());
+                return null;
+            }
+
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(connection.getInputStream(), StandardCharsets.US_ASCII))) {
+                String line = reader.readLine();
+                if (line == null || line.trim().isEmpty()) return null;
+
+                // 兼容sha256sum的输出格式：<hash>  <file>
+                return line.trim().split("\\s+")[0];
+            }
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    /**
+     * 下载资源包到本地，同时计算SHA-256
+     *
+     * @param packUrl 资源包的地址
+     * @param target  本地文件
+     * @return 十六进制的SHA-256，下载失败时返回空引用
+     */
+    private static String download(String packUrl, File target) throws IOException, NoSuchAlgorithmException {
+
+        HttpURLConnection connection = openConnection(packUrl);
+        try {
+            if (connection.getResponseCode() != HttpURLConnection.HTTP_OK) {
+                Log.w(LOG_TAG, "Resource pack is not available : " + packUrl + " , status : " + connection.getResponseCode());
+                return null;
+            }
+
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            try (InputStream in = new DigestInputStream(connection.getInputStream(), digest);
+                 OutputStream out = new FileOutputStream(target)) {
+                byte[] buff = new byte[64 * 1024];
+                int numRead;
+                while ((numRead = in.read(buff)) > 0) {
+                    out.write(buff, 0, numRead);
+                }
+            }
+
+            StringBuilder sb = new StringBuilder();
+            for (byte b : digest.digest()) {
+                sb.append(String.format(Locale.ROOT, "%02x", b));
+            }
+            return sb.toString();
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    /**
+     * 解压资源包，仅保留Bundle和Scripts两个目录
+     *
+     * @param zip    资源包
+     * @param target 解压目录
+     */
+    private static void unzip(File zip, File target) throws IOException {
+
+        String targetPath = target.getCanonicalPath() + File.separator;
+
+        try (ZipInputStream in = new ZipInputStream(new FileInputStream(zip))) {
+            ZipEntry entry;
+            byte[] buff = new byte[64 * 1024];
+            while ((entry = in.getNextEntry()) != null) {
+                String name = entry.getName();
+                if (entry.isDirectory() || !(name.startsWith("Bundle/") || name.startsWith("Scripts/"))) continue;
+
+                // 防止路径穿越
+                File file = new File(target, name);
+                if (!file.getCanonicalPath().startsWith(targetPath)) {
+                    throw new IOException("Illegal entry in resource pack : " + name);
+                }
+
+                FileUtils.forceMkdirParent(file);
+                try (OutputStream out = new FileOutputStream(file)) {
+                    int numRead;
+                    while ((numRead = in.read(buff)) > 0) {
+                        out.write(buff, 0, numRead);
+                    }
+                }
+            }
+        }
+    }
+
+    private static HttpURLConnection openConnection(String url) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        connection.setConnectTimeout(CONNECT_TIMEOUT);
+        connection.setReadTimeout(READ_TIMEOUT);
+        return connection;
+    }
+}
@@ -0,0 +1,193 @@
+package com.huozige.lab.container.platform.hzg;
+
+import android.net.Uri;
+
+import com.huozige.lab.container.platform.AbstractStaticFilesCacheFilter;
+import com.huozige.lab.container.utilities.DiskLruCache;
+import com.huozige.lab.container.utilities.HACLog;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.regex.Pattern;
+
+/**
+ * 活字格静态资源的运行时缓存，作为内置离线缓存之后的第二级
+ * 对于没有内置离线缓存的活字格版本，首次请求时下载Bundle和Scripts下的资源并写入应用私有存储，此后从本地返回
+ * 同一版本下的这些资源不会变化，因此以版本和路径作为缓存的键，无需校验
+ * 同一资源同时只下载一次，并发的请求等待同一次下载的结果；服务器声明no-store的资源不缓存
+ */
+public class HZGRuntimeCacheFilter extends AbstractStaticFilesCacheFilter {
+
+    final static String LOG_TAG = "HAC_HZGRuntimeCacheFilter";
+
+    /**
+     * 默认允许占用的最大字节数
+     */
+    public static final long DEFAULT_MAX_BYTES = 64L * 1024 * 1024;
+
+    static final int CONNECT_TIMEOUT = 15 * 1000;
+    static final int READ_TIMEOUT = 30 * 1000;
+
+    /**
+     * 版本号形如9.0.6.0
+     */
+    static final Pattern VERSION_PATTERN = Pattern.compile("\\d+(\\.\\d+)+");
+
+    private static final Set<String> BUNDLED_VERSIONS = new HashSet<>(Arrays.asList(HZGCacheFilter.SUPPORTED_VERSIONS));
+
+    private final DiskLruCache _store;
+    private final Map<String, FutureTask<File>> _downloads = new ConcurrentHashMap<>(); // 正在下载的资源，每个键一个
+    private final Set<String> _uncacheable = Collections.newSetFromMap(new ConcurrentHashMap<>()); // 服务器声明no-store的资源，本进程内由浏览器自行请求
+
+    /**
+     * 构造函数
+     *
+     * @param directory 缓存目录，位于应用私有存储中
+     * @param maxBytes  允许占用的最大字节数
+     */
+    public HZGRuntimeCacheFilter(File directory, long maxBytes) {
+        _store = DiskLruCache.open(directory, maxBytes);
+    }
+
+    /**
+     * 执行缓存检查，没有命中时同步下载并写入缓存
+     *
+     * @param url 原始URL
+     * @return 命中的缓存或空引用（下载失败时，由浏览器自行从服务器获取）
+     */
+    @Override
+    public CacheHint filter(Uri url) {
+
+        String version = parseVersion(url);
+        if (version == null || BUNDLED_VERSIONS.contains(version)) return null;
+
+        // 通过Path作为键，可以避免Query的影响
+        String key = url.getPath();
+        if (_uncacheable.contains(key)) return null;
+        File file = _store.get(key);
+
+        if (file == null) {
+            file = awaitDownload(url, key);
+            if (file == null) return null;
+        }
+
+        CacheHint result = new CacheHint();
+        result.FileName = url.getLastPathSegment();
+        result.LocalFilePath = file.getAbsolutePath();
+        result.Storage = CacheHint.STORAGE_FILES;
+        result.Encoding = "UTF-8";
+        result.MIME = CacheHint.guessMIME(result.FileName);
+        result.Length = file.length();
+        result.ETag = "\"" + file.getName() + "-" + Long.toHexString(result.Length) + "\""; // 文件名是键的哈希，同一版本下内容不变
+        return result;
+    }
+
+    /**
+     * 从URL中解析出活字格的版本，PATH形如：/9.0.6.0/Resources/Bundle/forguncy.js
+     *
+     * @param url 原始URL
+     * @return 版本号，不是活字格的静态资源时返回空引用
+     */
+    static String parseVersion(Uri url) {
+
+        List<String> segments = url.getPathSegments();
+        if (segments.size() < 4) return null;
+        if (!"Resources".equals(segments.get(1))) return null;
+        if (!"Bundle".equals(segments.get(2)) && !"Scripts".equals(segments.get(2))) return null;
+
+        String version = segments.get(0);
+        return VERSION_PATTERN.matcher(version).matches() ? version : null;
+    }
+
+    /**
+     * 下载资源并等待完成，同一个键正在下载时等待其结果，不重复下载
+     * 发起下载的请求在自己的线程中执行，完成后移除下载任务，之后的请求直接从缓存读取
+     *
+     * @param url 原始URL
+     * @param key 缓存的键
+     * @return 缓存文件，下载失败或不允许缓存时返回空引用
+     */
+    private File awaitDownload(Uri url, String key) {
+
+        FutureTask<File> task = _downloads.get(key);
+        if (task == null) {
+            // 执行前再检查一次缓存：上一次下载可能在本次检查缓存之后、加入任务之前完成
+            FutureTask<File> created = new FutureTask<>(() -> {
+                File cached = _store.get(key);
+                return cached != null ? cached : download(url, key);
+            });
+            task = _downloads.putIfAbsent(key, created);
+            if (task == null) {
+                task = created;
+                try {
+                    created.run();
+                } finally {
+                    _downloads.remove(key, created);
+                }
+            }
+        }
+
+        try {
+            return task.get(); // 下载有连接和读取超时，一定会完成
+        } catch (ExecutionException e) {
+            HACLog.e(LOG_TAG, "Error on downloading runtime cache for : {} Error : {}", url, e.getCause());
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+
+    /**
+     * 下载资源并写入缓存
+     *
+     * @param url 原始URL
+     * @param key 缓存的键
+     * @return 缓存文件，下载失败或不允许缓存时返回空引用
+     */
+    private File download(Uri url, String key) {
+
+        HttpURLConnection connection = null;
+        try {
+            connection = (HttpURLConnection) new URL(url.toString()).openConnection();
+            connection.setConnectTimeout(CONNECT_TIMEOUT);
+            connection.setReadTimeout(READ_TIMEOUT);
+
+            int code = connection.getResponseCode();
+            if (code != HttpURLConnection.HTTP_OK) {
+                HACLog.w(LOG_TAG, "Skip runtime cache for : {} , status : {}", url, code);
+                return null;
+            }
+
+            String cacheControl = connection.getHeaderField("Cache-Control");
+            if (cacheControl != null && cacheControl.toLowerCase().contains("no-store")) {
+                _uncacheable.add(key);
+                HACLog.w(LOG_TAG, "Skip runtime cache for : {} , Cache-Control : {}", url, cacheControl);
+                return null;
+            }
+
+            try (InputStream in = connection.getInputStream()) {
+                File file = _store.put(key, in);
+                HACLog.v(LOG_TAG, "Runtime cache stored for : {}", key);
+                return file;
+            }
+        } catch (IOException e) {
+            HACLog.e(LOG_TAG, "Error on downloading runtime cache for : {} Error : {}", url, e);
+            return null;
+        } finally {
+            if (connection != null) connection.disconnect();
+        }
+    }
+}
@@ -2,7 +2,13 @@ package com.huozige.lab.container.platform.hzg;
 
 import android.webkit.JavascriptInterface;
 
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONException;
 import com.huozige.lab.container.platform.AbstractWebInterop;
+import com.huozige.lab.container.utilities.JsValueMarshaller;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 /**
  * 活字格页面专用
@@ -10,19 +16,75 @@ import com.huozige.lab.container.platform.AbstractWebInterop;
  */
 public class HZGWebInterop extends AbstractWebInterop {
 
+    static final String MESSAGE_TYPE_SET_CELL_VALUES = "setCellValues";
+
+    /**
+     * 活字格平台的注入脚本位于Assets的hac_inject/hzg下
+     *
+     * @return 平台名称
+     */
+    @Override
+    public String getPlatformName() {
+        return "hzg";
+    }
+
     /**
      * 设置指定单元格的值
      * @param cellLocation 单元格的位置，如：{"Row":31,"Column":1,"PageID":"p","PageName":"兼容官方APP"}
-     * @param rawValue 需要设置的值，统一按照字符串处理
+     * @param rawValue 需要设置的值，保留类型：字符串、数字、布尔值、空值、列表、字典和字节数组（Base64字符串）
      */
     @Override
     public void setInputValue(String cellLocation, Object rawValue) throws IllegalStateException {
+        Map<String, Object> values = new LinkedHashMap<>();
+        values.put(cellLocation, rawValue);
+        setInputValues(values);
+    }
+
+    /**
+     * 批量设置多个单元格的值，在同一个动画帧内完成写入
+     * 通过消息通道发送，值由JsValueMarshaller按类型转换，不会拼接到脚本中
+     * 有单元格位置不是有效的JSON（如页面上的变量名）时，整批以一段脚本执行，保证一次调用只走一条路径、按顺序写入
+     * @param values 单元格的位置 -> 需要设置的值
+     */
+    @Override
+    public void setInputValues(Map<String, Object> values) throws IllegalStateException {
 
-        String scripts = "HAC.setCellValue(" + cellLocation + ",'" + rawValue.toString() + "');";
+        if (values.isEmpty()) return;
 
-        executeJavaScript(scripts);
-    }
+        StringBuilder message = new StringBuilder("{\"type\":\"" + MESSAGE_TYPE_SET_CELL_VALUES + "\",\"pairs\":[");
+        StringBuilder script = new StringBuilder("HAC.setCellValues([");
+        boolean scriptOnly = false;
+        int count = 0;
+        for (Map.Entry<String, Object> value : values.entrySet()) {
+            if (count > 0) {
+                message.append(',');
+                script.append(',');
+            }
+            count++;
+
+            // 脚本中的位置原样拼接，可以是页面上的变量名
+            script.append('[').append(value.getKey()).append(',');
+            JsValueMarshaller.append(script, value.getValue()).append(']');
+            if (scriptOnly) continue;
 
+            Object location;
+            try {
+                location = JSON.parse(value.getKey());
+            } catch (JSONException e) {
+                scriptOnly = true;
+                continue;
+            }
+            message.append('[');
+            JsValueMarshaller.append(message, location).append(',');
+            JsValueMarshaller.append(message, value.getValue()).append(']');
+        }
+
+        if (scriptOnly) {
+            executeJavaScript(script.append("]);").toString());
+        } else {
+            postMessage(message.append("]}").toString());
+        }
+    }
 
     /**
      * 用于从HTML中传回字符串值的JS代理
@@ -2,17 +2,63 @@ package com.huozige.lab.container.proxy;
 
 import android.content.Intent;
 
+import androidx.activity.result.ActivityResultCallback;
+import androidx.activity.result.ActivityResultLauncher;
+import androidx.activity.result.contract.ActivityResultContract;
+
 import com.huozige.lab.container.platform.AbstractWebInterop;
 import com.huozige.lab.container.utilities.ConfigManager;
+import com.huozige.lab.container.utilities.JsValueMarshaller;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeoutException;
 
 /**
  * JavaScript桥的抽象类
- * 未来可以做更多功能，但暂时没有具体的实现
+ * 异步方法约定：名称为同步方法加Async后缀，第一个参数为页面生成的回调ID，页面通过HAC.call(桥名称, 方法名称, 参数...)调用并获得Promise；
+ * 原生代码通过resolve或reject发送callback消息，由页面上的HAC.messageHandlers.callback统一兑现
+ * 写入单元格的旧方法保留，作为兼容旧页面的入口
+ * 耗时的方法体通过enqueue（只读）或enqueueWrite（写入）提交到本桥的执行队列，在后台线程中按顺序执行，不占用WebView唯一的JavaBridge线程
  */
 public abstract class AbstractProxy {
 
+    static final String MESSAGE_TYPE_CALLBACK = "callback";
+
+    /**
+     * 异步调用失败的原因：用户取消或操作失败
+     */
+    public static final String ERROR_CANCELED = "Canceled";
+
+    /**
+     * 异步调用失败的原因：超过了本桥的超时时间
+     */
+    public static final String ERROR_TIMEOUT = "Timeout";
+
+    /**
+     * 异步调用失败的原因：本桥排队的调用过多
+     */
+    public static final String ERROR_BUSY = "Busy";
+
+    /**
+     * 异步调用失败的原因：用户拒绝了所需的权限
+     */
+    public static final String ERROR_PERMISSION_DENIED = "PermissionDenied";
+
+    /**
+     * 执行队列中每个调用的默认超时时间
+     */
+    static final long DEFAULT_TIMEOUT_MILLIS = 30000;
+
     private AbstractWebInterop interop; // HTML页面交互器
     private ConfigManager configManager; // 配置管理器
+    private final List<ActivityResultLauncher<?>> launchers = new ArrayList<>(); // 通过registerForResult注册的启动器
+    private volatile ProxyExecutor executor; // 执行队列，第一次enqueue时创建
 
     /**
      * 获取JS桥注册到页面时使用的名称
@@ -21,11 +67,156 @@ public abstract class AbstractProxy {
 
     /**
      * 需要注册到上下文中的初始化操作
+     * 由ProxyHost在页面第一次调用本桥时执行，此时Activity可能已经启动，启动器需要通过registerForResult创建
      */
     public void onActivityCreated(){
 
     }
 
+    /**
+     * 创建Activity的启动器，可以在Activity的任意生命周期阶段调用
+     * 直接注册到Activity的ActivityResultRegistry，使用固定的键，Activity重建后仍能收到结果；由ProxyHost在销毁时注销
+     *
+     * @param contract 调用约定
+     * @param callback 收到结果后的回调
+     * @return 启动器
+     */
+    protected <I, O> ActivityResultLauncher<I> registerForResult(ActivityResultContract<I, O> contract, ActivityResultCallback<O> callback) {
+        String key = "hac_proxy_" + getName() + "_" + launchers.size();
+        ActivityResultLauncher<I> launcher = getInterop().getActivityContext().getActivityResultRegistry().register(key, contract, callback);
+        launchers.add(launcher);
+        return launcher;
+    }
+
+    /**
+     * 注销通过registerForResult创建的启动器
+     */
+    void unregisterLaunchers() {
+        for (ActivityResultLauncher<?> launcher : launchers) {
+            launcher.unregister();
+        }
+        launchers.clear();
+    }
+
+    /**
+     * 执行队列中同时执行的调用数上限，默认为1，即本桥的调用串行执行
+     * 方法体互不依赖且线程安全的桥可以覆盖此方法
+     */
+    protected int getMaxConcurrency() {
+        return 1;
+    }
+
+    /**
+     * 执行队列中只读调用的排队超时时间，写入调用没有超时
+     */
+    protected long getTimeoutMillis() {
+        return DEFAULT_TIMEOUT_MILLIS;
+    }
+
+    /**
+     * 将只读的方法体提交到本桥的执行队列，在后台线程中执行
+     * 有回调ID时，以方法体的返回值兑现Promise；方法体失败，或在排队中因超时、排队过多被放弃时拒绝
+     * 没有回调ID时（旧页面），方法体自行写入单元格，返回值被忽略
+     * Activity销毁时仍在排队的调用被放弃，不再通知页面
+     *
+     * @param callbackId 页面生成的回调ID，可以为空
+     * @param body       方法体，不能访问UI，不能修改持久化的数据
+     */
+    protected void enqueue(String callbackId, Callable<Object> body) {
+        submit(callbackId, body, false);
+    }
+
+    /**
+     * 将写入的方法体提交到本桥的执行队列，在后台线程中执行
+     * 写入调用一定会执行：不会超时、不受排队上限限制，Activity销毁时也会执行完毕；与本桥的其他调用保持提交顺序
+     * 有回调ID时，以方法体的实际结果兑现或拒绝Promise
+     *
+     * @param callbackId 页面生成的回调ID，可以为空
+     * @param body       方法体，不能访问UI
+     */
+    protected void enqueueWrite(String callbackId, Callable<Object> body) {
+        submit(callbackId, body, true);
+    }
+
+    /**
+     * 等待全部桥中已提交的写入调用完成，在结束进程前调用
+     *
+     * @param timeoutMillis 最长等待时间
+     * @return 是否全部完成
+     */
+    protected static boolean awaitPendingWrites(long timeoutMillis) {
+        return ProxyExecutor.awaitMutations(timeoutMillis);
+    }
+
+    /**
+     * 提交到执行队列，经过ProxyHost.invoke转发的调用在完成时计入BridgeMetrics
+     */
+    private void submit(String callbackId, Callable<Object> body, boolean mutating) {
+        BridgeMetrics metrics = BridgeMetrics.getInstance();
+        BridgeMetrics.Invocation invocation = metrics.defer();
+        getExecutor().submit(body, mutating, value -> {
+            metrics.complete(invocation, false);
+            if (callbackId != null) resolve(callbackId, value);
+        }, error -> {
+            metrics.complete(invocation, true);
+            if (callbackId != null) rejectQueued(callbackId, error);
+        });
+    }
+
+    private void rejectQueued(String callbackId, Throwable error) {
+        if (error instanceof CancellationException) return; // 取消发生在Activity销毁时，页面已不存在
+        if (error instanceof TimeoutException) {
+            reject(callbackId, ERROR_TIMEOUT);
+        } else if (error instanceof RejectedExecutionException) {
+            reject(callbackId, ERROR_BUSY);
+        } else {
+            reject(callbackId, String.valueOf(error));
+        }
+    }
+
+    /**
+     * 将只读的方法体提交到本桥的执行队列，并在调用线程中等待结果
+     * 用于需要直接返回值的方法：保证其在本桥之前提交的调用（如写入）完成后才执行
+     *
+     * @param body 方法体，不能访问UI
+     * @return 方法体的返回值
+     * @throws IllegalStateException 方法体失败，或在排队中因超时、排队过多被放弃
+     */
+    protected <T> T enqueueAndWait(Callable<T> body) throws IllegalStateException {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        getExecutor().submit(body, false, future::complete, future::completeExceptionally);
+        try {
+            return future.get(); // 超时由执行队列负责，一定会完成
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Proxy call failed : " + getName(), e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Proxy call interrupted : " + getName(), e);
+        }
+    }
+
+    /**
+     * 放弃本桥排队中的只读调用，已经开始执行的和写入调用不受影响，被放弃的调用不再通知页面
+     */
+    void cancelPendingTasks() {
+        if (executor != null) executor.cancelPending();
+    }
+
+    /**
+     * 获取执行队列的统计信息，没有使用过执行队列时返回空引用
+     */
+    String getExecutorStatistics() {
+        ProxyExecutor current = executor;
+        return current == null ? null : current.getStatistics();
+    }
+
+    private synchronized ProxyExecutor getExecutor() {
+        if (executor == null) {
+            executor = new ProxyExecutor(getName(), getMaxConcurrency(), getTimeoutMillis());
+        }
+        return executor;
+    }
+
     /**
      * 需要注册到上下文中的初始化操作
      */
@@ -59,6 +250,72 @@ public abstract class AbstractProxy {
         return false;
     }
 
+    /**
+     * 兑现页面上的Promise
+     *
+     * @param callbackId 页面生成的回调ID
+     * @param value      结果，由JsValueMarshaller按类型转换
+     */
+    protected void resolve(String callbackId, Object value) {
+        StringBuilder message = new StringBuilder("{\"type\":\"" + MESSAGE_TYPE_CALLBACK + "\",\"id\":");
+        JsValueMarshaller.appendString(message, callbackId).append(",\"ok\":true,\"value\":");
+        JsValueMarshaller.append(message, value).append('}');
+        getInterop().postMessage(message.toString());
+    }
+
+    /**
+     * 拒绝页面上的Promise
+     *
+     * @param callbackId 页面生成的回调ID
+     * @param reason     失败的原因，页面上作为Error的message
+     */
+    protected void reject(String callbackId, String reason) {
+        StringBuilder message = new StringBuilder("{\"type\":\"" + MESSAGE_TYPE_CALLBACK + "\",\"id\":");
+        JsValueMarshaller.appendString(message, callbackId).append(",\"ok\":false,\"error\":");
+        JsValueMarshaller.append(message, reason).append('}');
+        getInterop().postMessage(message.toString());
+    }
+
+    /**
+     * 同一时间只能等待一个结果的方法（如扫码）被再次调用时，拒绝仍在等待的上一个调用，避免其Promise永远不被兑现
+     *
+     * @param pendingCallbackId 仍在等待结果的回调ID，可以为空
+     */
+    protected void rejectSuperseded(String pendingCallbackId) {
+        if (pendingCallbackId != null) reject(pendingCallbackId, ERROR_BUSY);
+    }
+
+    /**
+     * 将结果交给页面：有回调ID时兑现Promise，否则写入单元格（兼容旧页面）
+     *
+     * @param callbackId 页面生成的回调ID，可以为空
+     * @param cell       单元格的位置，可以为空
+     * @param value      结果
+     */
+    protected void deliver(String callbackId, String cell, Object value) {
+        if (callbackId != null) {
+            resolve(callbackId, value);
+        } else if (cell != null) {
+            getInterop().setInputValue(cell, value);
+        }
+    }
+
+    /**
+     * 将失败交给页面：有回调ID时拒绝Promise，否则将单元格写入兼容旧页面的值
+     *
+     * @param callbackId  页面生成的回调ID，可以为空
+     * @param reason      失败的原因
+     * @param cell        单元格的位置，可以为空
+     * @param legacyValue 旧页面约定写入单元格的值，如空字符串
+     */
+    protected void fail(String callbackId, String reason, String cell, Object legacyValue) {
+        if (callbackId != null) {
+            reject(callbackId, reason);
+        } else if (cell != null) {
+            getInterop().setInputValue(cell, legacyValue);
+        }
+    }
+
     public void setInterop(AbstractWebInterop interop) {
         this.interop = interop;
     }
@@ -14,9 +14,13 @@ import androidx.activity.result.contract.ActivityResultContracts;
 import com.hjq.permissions.Permission;
 import com.huozige.lab.container.QuickConfigActivity;
 import com.huozige.lab.container.SettingActivity;
+import com.huozige.lab.container.proxy.annotation.HACProxy;
 import com.huozige.lab.container.utilities.LifecycleUtility;
 import com.huozige.lab.container.utilities.PermissionsUtility;
 
+import java.io.File;
+import java.io.IOException;
+
 /**
  * 让页面能对APP壳子进行操作
  * 1.1.0
@@ -37,7 +41,13 @@ import com.huozige.lab.container.utilities.PermissionsUtility;
  * app.closeApp()：关闭应用
  * 1.12.0
  * app.dial(phoneNumber)：拨打电话
+ * 1.13.0
+ * HAC.call("app","getVersion")、HAC.call("app","getPackageName")、HAC.call("app","getActionBarColor")：同上，返回Promise
+ * app.getBridgeStats()：获取JS桥调用统计的JSON
+ * HAC.call("app","getBridgeStats")：同上，返回Promise，结果为对象
+ * HAC.call("app","dumpBridgeStats")：将JS桥调用统计导出到应用目录下的文件，返回Promise，结果为文件路径
  */
+@HACProxy(name = "app", order = 60, since = "1.1.0")
 public class AppProxy extends AbstractProxy {
 
     String _versionCell, _packageCell; // 单元格位置缓存
@@ -46,6 +56,19 @@ public class AppProxy extends AbstractProxy {
 
     static final String LOG_TAG = "HAC_AppProxy";
 
+    /**
+     * JS桥调用统计导出的文件名，位于应用的files目录下
+     */
+    public static final String BRIDGE_STATS_FILE = "bridge_stats.json";
+
+    /**
+     * 关闭应用前等待写入完成的最长时间
+     */
+    static final long CLOSE_WAIT_MILLIS = 3000;
+
+    // 尚未创建app桥时导出统计使用的写入队列
+    private static final ProxyExecutor __detachedWriter = new ProxyExecutor("app_detached", 1, DEFAULT_TIMEOUT_MILLIS);
+
     /**
      * 根据传递过来的字符串判断是否为true
      *
@@ -69,7 +92,7 @@ public class AppProxy extends AbstractProxy {
      */
     @Override
     public void onActivityCreated() {
-        _arcWoCallback = getInterop().getActivityContext().registerForActivityResult(new ActivityResultContracts.StartActivityForResult(), result -> {
+        _arcWoCallback = registerForResult(new ActivityResultContracts.StartActivityForResult(), result -> {
         });
     }
 
@@ -89,9 +112,11 @@ public class AppProxy extends AbstractProxy {
     /**
      * 注册到页面的app.closeApp()方法
      * 无需提示，直接关闭应用
+     * 结束进程前等待各个桥已提交的写入完成，避免页面在关闭前的写入丢失
      */
     @JavascriptInterface
     public void closeApp() {
+        awaitPendingWrites(CLOSE_WAIT_MILLIS);
         LifecycleUtility.close();
     }
 
@@ -208,6 +233,19 @@ public class AppProxy extends AbstractProxy {
 
         // 记录参数
         _packageCell = cell;
+        getInterop().setInputValue(_packageCell, readActionBarColor());
+    }
+
+    /**
+     * 注册到页面的app.getActionBarColorAsync(callbackId)方法，由HAC.call调用
+     */
+    @JavascriptInterface
+    public void getActionBarColorAsync(String callbackId) {
+        resolve(callbackId, readActionBarColor());
+    }
+
+    private String readActionBarColor() {
+
         int tcdColor = getConfigManager().getTCD();
 
         // 兼容Web的常规做法，不返回A，仅返回RGB
@@ -225,7 +263,7 @@ public class AppProxy extends AbstractProxy {
         sb.append(G);
         sb.append(B);
 
-        getInterop().setInputValue(_packageCell, sb.toString());
+        return sb.toString();
     }
 
     /**
@@ -259,6 +297,14 @@ public class AppProxy extends AbstractProxy {
         getInterop().setInputValue(_packageCell, getInterop().getActivityContext().getPackageName());
     }
 
+    /**
+     * 注册到页面的app.getPackageNameAsync(callbackId)方法，由HAC.call调用
+     */
+    @JavascriptInterface
+    public void getPackageNameAsync(String callbackId) {
+        resolve(callbackId, getInterop().getActivityContext().getPackageName());
+    }
+
     /**
      * 注册到页面的app.getVersion(cell)方法
      * 获取版本号
@@ -269,6 +315,74 @@ public class AppProxy extends AbstractProxy {
         // 记录参数
         _versionCell = cell;
 
+        // 查询PackageManager涉及跨进程调用，在执行队列中完成
+        enqueue(null, () -> {
+            getInterop().setInputValue(cell, readVersionName());
+            return null;
+        });
+    }
+
+    /**
+     * 注册到页面的app.getVersionAsync(callbackId)方法，由HAC.call调用
+     */
+    @JavascriptInterface
+    public void getVersionAsync(String callbackId) {
+        enqueue(callbackId, this::readVersionName);
+    }
+
+    /**
+     * 注册到页面的app.getBridgeStats()方法
+     * 获取JS桥调用统计
+     *
+     * @return 统计的JSON，格式见BridgeMetrics.getSnapshot
+     */
+    @JavascriptInterface
+    public String getBridgeStats() {
+        return BridgeMetrics.getInstance().toJson();
+    }
+
+    /**
+     * 注册到页面的app.getBridgeStatsAsync(callbackId)方法，由HAC.call调用
+     */
+    @JavascriptInterface
+    public void getBridgeStatsAsync(String callbackId) {
+        resolve(callbackId, BridgeMetrics.getInstance().getSnapshot());
+    }
+
+    /**
+     * 注册到页面的app.dumpBridgeStatsAsync(callbackId)方法，由HAC.call调用
+     * 写入文件在执行队列中完成
+     */
+    @JavascriptInterface
+    public void dumpBridgeStatsAsync(String callbackId) {
+        File file = new File(getInterop().getActivityContext().getFilesDir(), BRIDGE_STATS_FILE);
+        enqueueWrite(callbackId, () -> writeBridgeStats(file));
+    }
+
+    /**
+     * 在后台将JS桥调用统计导出到文件，供Activity销毁时调用，不阻塞UI线程
+     * 已创建app桥时进入该桥的执行队列，与dumpBridgeStatsAsync保持顺序；否则进入独立的写入队列
+     * 两者都是写入任务，一定会执行，关闭应用时由awaitPendingWrites等待
+     *
+     * @param host JS桥的宿主
+     * @param file 导出的文件
+     */
+    public static void dumpBridgeStatsInBackground(ProxyHost host, File file) {
+        AbstractProxy proxy = host.getCreatedProxy("app");
+        if (proxy instanceof AppProxy) {
+            ((AppProxy) proxy).enqueueWrite(null, () -> writeBridgeStats(file));
+        } else {
+            __detachedWriter.submit(() -> writeBridgeStats(file), true, path -> Log.v(LOG_TAG, "JS桥调用统计已导出：" + path), error -> Log.e(LOG_TAG, "导出JS桥调用统计出错：" + error));
+        }
+    }
+
+    private static String writeBridgeStats(File file) throws IOException {
+        if (!BridgeMetrics.getInstance().dumpToFile(file)) throw new IOException("Failed to write " + file);
+        return file.getAbsolutePath();
+    }
+
+    private String readVersionName() {
+
         String versionName = "";
 
         try {
@@ -279,8 +393,6 @@ public class AppProxy extends AbstractProxy {
             e.printStackTrace();
         }
 
-        // 需要调度回主线程操作
-        String finalVersionName = versionName;
-        getInterop().setInputValue(_versionCell, finalVersionName);
+        return versionName;
     }
 }
@@ -0,0 +1,226 @@
+package com.huozige.lab.container.proxy;
+
+import com.huozige.lab.container.utilities.HACLog;
+import com.huozige.lab.container.utilities.JsValueMarshaller;
+
+import org.apache.commons.io.FileUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * JS桥调用的统计：按“桥名称.方法名称”分别记录调用次数、失败次数和耗时分布
+ * 记录时不加锁，只使用原子计数器；耗时按固定的区间统计，不保存每次调用的明细
+ * 方法体提交到执行队列的调用，在执行完成（或被放弃）时才记录，耗时从页面发起调用开始计算，而不是只计入排队的开销
+ * 页面通过app.getBridgeStats()读取，也可以导出到文件用于离线分析
+ */
+public class BridgeMetrics {
+
+    static final String LOG_TAG = "HAC_BridgeMetrics";
+
+    /**
+     * 耗时区间的上限（微秒），超过最后一个上限的计入溢出区间
+     */
+    static final long[] BUCKET_BOUNDS_MICROS = {100, 250, 500, 1000, 2500, 5000, 10000, 25000, 50000, 100000, 250000, 500000, 1000000};
+
+    private static BridgeMetrics __instance;
+
+    private static final ThreadLocal<Invocation> __current = new ThreadLocal<>(); // 调用线程中正在执行的调用
+
+    private final Map<String, MethodMetrics> _methods = new ConcurrentHashMap<>(); // 桥名称.方法名称 -> 统计
+
+    /**
+     * 经过ProxyHost.invoke转发的一次调用
+     */
+    static class Invocation {
+        final String ProxyName;
+        final String Method;
+        final long StartNanos = System.nanoTime();
+        boolean Deferred; // 方法体已提交到执行队列，由执行队列在完成时记录
+
+        Invocation(String proxyName, String method) {
+            ProxyName = proxyName;
+            Method = method;
+        }
+    }
+
+    /**
+     * 单个方法的统计
+     */
+    static class MethodMetrics {
+        final LongAdder Calls = new LongAdder();
+        final LongAdder Errors = new LongAdder();
+        final LongAdder TotalMicros = new LongAdder();
+        final AtomicLong MaxMicros = new AtomicLong();
+        final AtomicLongArray Buckets = new AtomicLongArray(BUCKET_BOUNDS_MICROS.length + 1);
+
+        void record(long micros, boolean failed) {
+            Calls.increment();
+            if (failed) Errors.increment();
+            TotalMicros.add(micros);
+            MaxMicros.accumulateAndGet(micros, Math::max);
+            Buckets.incrementAndGet(bucketOf(micros));
+        }
+    }
+
+    /**
+     * 获取统计实例
+     *
+     * @return 当前应用的统计
+     */
+    public static synchronized BridgeMetrics getInstance() {
+
+        if (__instance == null) {
+            __instance = new BridgeMetrics();
+        }
+
+        return __instance;
+    }
+
+    /**
+     * 记录一次调用
+     *
+     * @param proxyName 桥的名称
+     * @param method    方法名称
+     * @param nanos     耗时（纳秒）
+     * @param failed    是否失败
+     */
+    public void record(String proxyName, String method, long nanos, boolean failed) {
+        String key = proxyName + "." + method;
+        MethodMetrics metrics = _methods.get(key);
+        if (metrics == null) {
+            metrics = _methods.computeIfAbsent(key, k -> new MethodMetrics());
+        }
+        metrics.record(nanos / 1000, failed);
+    }
+
+    /**
+     * 在调用线程中开始一次调用，与end成对使用
+     *
+     * @param proxyName 桥的名称
+     * @param method    方法名称
+     * @return 调用，传给end
+     */
+    Invocation begin(String proxyName, String method) {
+        Invocation invocation = new Invocation(proxyName, method);
+        __current.set(invocation);
+        return invocation;
+    }
+
+    /**
+     * 在调用线程中结束一次调用，方法体已提交到执行队列时不在这里记录，避免重复统计
+     *
+     * @param invocation begin返回的调用
+     * @param failed     调用线程中是否失败
+     */
+    void end(Invocation invocation, boolean failed) {
+        __current.remove();
+        if (!invocation.Deferred) complete(invocation, failed);
+    }
+
+    /**
+     * 将调用线程中正在执行的调用转交给执行队列，在方法体完成时通过complete记录
+     * 一次调用只转交第一次提交的方法体
+     *
+     * @return 转交的调用，不是经过ProxyHost.invoke转发或已经转交过时返回空引用
+     */
+    Invocation defer() {
+        Invocation invocation = __current.get();
+        if (invocation == null || invocation.Deferred) return null;
+        invocation.Deferred = true;
+        return invocation;
+    }
+
+    /**
+     * 记录一次调用的完成，耗时从begin开始计算
+     *
+     * @param invocation 调用，为空时忽略
+     * @param failed     是否失败
+     */
+    void complete(Invocation invocation, boolean failed) {
+        if (invocation != null) record(invocation.ProxyName, invocation.Method, System.nanoTime() - invocation.StartNanos, failed);
+    }
+
+    /**
+     * 获取当前的统计，按方法名称排序
+     * 区间的键为上限的毫秒数，如"0.25"表示不超过0.25毫秒，"+Inf"为溢出区间
+     *
+     * @return 方法 -> {calls, errors, totalMs, avgMs, maxMs, buckets}
+     */
+    public Map<String, Object> getSnapshot() {
+        Map<String, Object> snapshot = new TreeMap<>();
+        for (Map.Entry<String, MethodMetrics> entry : _methods.entrySet()) {
+            MethodMetrics metrics = entry.getValue();
+            long calls = metrics.Calls.sum();
+            long totalMicros = metrics.TotalMicros.sum();
+
+            Map<String, Object> buckets = new LinkedHashMap<>();
+            for (int i = 0; i <= BUCKET_BOUNDS_MICROS.length; i++) {
+                String label = i < BUCKET_BOUNDS_MICROS.length ? String.valueOf(BUCKET_BOUNDS_MICROS[i] / 1000.0) : "+Inf";
+                buckets.put(label, metrics.Buckets.get(i));
+            }
+
+            Map<String, Object> method = new LinkedHashMap<>();
+            method.put("calls", calls);
+            method.put("errors", metrics.Errors.sum());
+            method.put("totalMs", totalMicros / 1000.0);
+            method.put("avgMs", calls == 0 ? 0 : totalMicros / 1000.0 / calls);
+            method.put("maxMs", metrics.MaxMicros.get() / 1000.0);
+            method.put("buckets", buckets);
+            snapshot.put(entry.getKey(), method);
+        }
+        return snapshot;
+    }
+
+    /**
+     * 获取当前统计的JSON
+     */
+    public String toJson() {
+        return JsValueMarshaller.toLiteral(getSnapshot());
+    }
+
+    /**
+     * 将当前的统计导出到文件，覆盖已有的文件
+     *
+     * @param file 目标文件
+     * @return 是否导出成功
+     */
+    public boolean dumpToFile(File file) {
+        try {
+            FileUtils.writeStringToFile(file, toJson(), StandardCharsets.UTF_8);
+            HACLog.i(LOG_TAG, "Bridge metrics dumped to {}", file);
+            return true;
+        } catch (IOException e) {
+            HACLog.e(LOG_TAG, "Error on dumping bridge metrics : {}", e);
+            return false;
+        }
+    }
+
+    /**
+     * 清空统计
+     */
+    public void reset() {
+        _methods.clear();
+    }
+
+    /**
+     * 耗时所在区间的序号
+     */
+    static int bucketOf(long micros) {
+        for (int i = 0; i < BUCKET_BOUNDS_MICROS.length; i++) {
+            if (micros <= BUCKET_BOUNDS_MICROS[i]) return i;
+        }
+        return BUCKET_BOUNDS_MICROS.length;
+    }
+
+    private BridgeMetrics() {
+    }
+}
@@ -5,11 +5,14 @@ import android.provider.Settings;
 import android.util.Log;
 import android.webkit.JavascriptInterface;
 
+import com.huozige.lab.container.proxy.annotation.HACProxy;
+
 /**
  * 让页面能获取设备的唯一标识
  * 1.10.0
  * device.getSecureId()：获取当前设备的唯一标识
  */
+@HACProxy(name = "device", order = 50, since = "1.10.0")
 public class DeviceInfoProxy extends AbstractProxy {
 
     static final String LOG_TAG = "HAC_DeviceInfoProxy";
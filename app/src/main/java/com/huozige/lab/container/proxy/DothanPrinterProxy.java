@@ -4,12 +4,14 @@ import android.webkit.JavascriptInterface;
 
 import com.dothantech.lpapi.LPAPI;
 import com.dothantech.printer.IDzPrinter;
+import com.huozige.lab.container.proxy.annotation.HACProxy;
 
 /**
  * 让页面能操作德佟封装的蓝牙打印机
  * 1.7.0
  * dothanPrinter.getStatus()：获取当前连接的打印机的状态
  */
+@HACProxy(name = "dothanPrinter", order = 90, since = "1.7.0")
 public class DothanPrinterProxy extends AbstractProxy{
     private LPAPI _lpApi;
 
@@ -4,18 +4,29 @@ import android.content.Intent;
 import android.webkit.JavascriptInterface;
 
 import com.hjq.permissions.Permission;
+import com.huozige.lab.container.proxy.annotation.HACProxy;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 import locationprovider.davidserrano.com.LocationProvider;
 
 /**
  * 让页面能获取当前的地理位置
  * geo.getLocation(coordinateSystem,cellLat,cellLon,cellError)：获取地理位置
+ * HAC.call("geo","getLocation",coordinateSystem)：同上，返回Promise，结果为{lat, lon}，定位服务未开启时以LocationServicesNotEnabled拒绝，没有定位权限时以PermissionDenied拒绝
  */
+@HACProxy(name = "geo", order = 40)
 public class GeoProxy extends AbstractProxy {
 
     static final String CS_WGS84 = "wgs84";
     static final String CS_BD09 = "bd09";
 
+    /**
+     * 异步调用失败的原因：定位服务未开启
+     */
+    public static final String ERROR_LOCATION_SERVICES_NOT_ENABLED = "LocationServicesNotEnabled";
+
     /**
      * 注册到页面的geo.getPackageName(cell)方法
      * 将当前地址信息填写到单元格
@@ -26,6 +37,22 @@ public class GeoProxy extends AbstractProxy {
      */
     @JavascriptInterface
     public void getLocation(String coordinateSystem, String cellLat, String cellLon, String cellErr) {
+        requestLocation(null, coordinateSystem, cellLat, cellLon, cellErr);
+    }
+
+    /**
+     * 注册到页面的geo.getLocationAsync(callbackId,coordinateSystem)方法，由HAC.call调用
+     * 后台更新的位置不再通知页面，Promise只兑现一次
+     *
+     * @param callbackId       页面生成的回调ID
+     * @param coordinateSystem 坐标系，同getLocation
+     */
+    @JavascriptInterface
+    public void getLocationAsync(String callbackId, String coordinateSystem) {
+        requestLocation(callbackId, coordinateSystem, null, null, null);
+    }
+
+    private void requestLocation(String callbackId, String coordinateSystem, String cellLat, String cellLon, String cellErr) {
 
         // 获取地理位置，需要先申请权限
         getInterop().requirePermission(new String[]{
@@ -35,26 +62,47 @@ public class GeoProxy extends AbstractProxy {
             //create a callback
             LocationProvider.LocationCallback callback = new LocationProvider.LocationCallback() {
 
+                private boolean _resolved = false; // Promise只兑现一次
+
                 private void returnWithWGS84(float lat, float lon) {
 
+                    double[] latlon;
                     if (CS_BD09.equalsIgnoreCase(coordinateSystem)) {
                         // 优先百度坐标，可配套百度地图使用
-                        double[] bd09 = Geo_CoordinateSystemHelpers.wgs84_bd09(lat, lon);
-                        getInterop().setInputValue(cellLat, String.valueOf(bd09[0]));
-                        getInterop().setInputValue(cellLon, String.valueOf(bd09[1]));
+                        latlon = Geo_CoordinateSystemHelpers.wgs84_bd09(lat, lon);
                     } else if (CS_WGS84.equalsIgnoreCase(coordinateSystem)) {
                         // 然后是GPS坐标
-                        getInterop().setInputValue(cellLat, String.valueOf(lat));
-                        getInterop().setInputValue(cellLon, String.valueOf(lon));
+                        latlon = new double[]{lat, lon};
                     } else {
                         // 默认为国内火星坐标
-                        double[] gcj02 = Geo_CoordinateSystemHelpers.wgs84_gcj02(lat, lon);
-                        getInterop().setInputValue(cellLat, String.valueOf(gcj02[0]));
-                        getInterop().setInputValue(cellLon, String.valueOf(gcj02[1]));
+                        latlon = Geo_CoordinateSystemHelpers.wgs84_gcj02(lat, lon);
+                    }
+
+                    if (callbackId != null) {
+                        if (_resolved) return;
+                        _resolved = true;
+
+                        Map<String, Object> location = new LinkedHashMap<>();
+                        location.put("lat", latlon[0]);
+                        location.put("lon", latlon[1]);
+                        resolve(callbackId, location);
+                        return;
+                    }
+
+                    // 经纬度和错误信息一次性写入，保持旧页面约定的字符串格式
+                    Map<String, Object> values = new LinkedHashMap<>();
+                    if (CS_WGS84.equalsIgnoreCase(coordinateSystem)) {
+                        values.put(cellLat, String.valueOf(lat));
+                        values.put(cellLon, String.valueOf(lon));
+                    } else {
+                        values.put(cellLat, String.valueOf(latlon[0]));
+                        values.put(cellLon, String.valueOf(latlon[1]));
                     }
 
                     // 重置错误信息
-                    getInterop().setInputValue(cellErr, "");
+                    values.put(cellErr, "");
+
+                    getInterop().setInputValues(values);
                 }
 
                 @Override
@@ -67,7 +115,7 @@ public class GeoProxy extends AbstractProxy {
                 @Override
                 public void locationServicesNotEnabled() {
                     getInterop().writeErrorIntoConsole("getLocation Location Services Not Enabled");
-                    getInterop().setInputValue(cellErr, "LocationServicesNotEnabled");
+                    fail(callbackId, ERROR_LOCATION_SERVICES_NOT_ENABLED, cellErr, ERROR_LOCATION_SERVICES_NOT_ENABLED);
                 }
 
                 @Override
@@ -98,6 +146,10 @@ public class GeoProxy extends AbstractProxy {
 
             //start getting location
             provider.requestLocation();
+        }, () -> {
+            // 用户拒绝或只授予了部分权限
+            getInterop().writeErrorIntoConsole("getLocation Permission Denied");
+            fail(callbackId, ERROR_PERMISSION_DENIED, cellErr, ERROR_PERMISSION_DENIED);
         });
     }
 
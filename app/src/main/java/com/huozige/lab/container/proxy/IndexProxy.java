@@ -7,18 +7,22 @@ import android.webkit.JavascriptInterface;
 import androidx.activity.result.ActivityResultLauncher;
 import androidx.activity.result.contract.ActivityResultContracts;
 
+import com.huozige.lab.container.proxy.annotation.HACProxy;
 import com.king.zxing.CameraScan;
 import com.king.zxing.CaptureActivity;
 
 /**
  * 兼容官方APP的页面端能力
  * index.ScanCode(cell)：调用手机摄像头实现扫码
+ * HAC.call("index","ScanCode")：同上，返回Promise，取消时拒绝
  */
+@HACProxy(name = "index", order = 10)
 public class IndexProxy extends AbstractProxy {
 
     ActivityResultLauncher<Intent> _arcZxingLite; // 用来弹出ZXingLite扫码页面的调用器，用来代替旧版本的startActivityForResult方法。
 
     String _scanResultCell; // 存放扫码结果的单元格位置
+    String _scanCallbackId; // 等待扫码结果的回调ID
 
     /**
      * 注册到页面的index.ScanCode(cell)方法
@@ -26,8 +30,23 @@ public class IndexProxy extends AbstractProxy {
      */
     @JavascriptInterface
     public void ScanCode(String cellLocation) {
+        startScan(null, cellLocation);
+    }
+
+    /**
+     * 注册到页面的index.ScanCodeAsync(callbackId)方法，由HAC.call调用
+     * @param callbackId 页面生成的回调ID
+     */
+    @JavascriptInterface
+    public void ScanCodeAsync(String callbackId) {
+        startScan(callbackId, null);
+    }
 
-        // 存储单元格位置
+    private void startScan(String callbackId, String cellLocation) {
+
+        // 存储结果的去向
+        rejectSuperseded(_scanCallbackId);
+        _scanCallbackId = callbackId;
         _scanResultCell = cellLocation;
 
         // 调用ZXingLite的扫码页面
@@ -49,22 +68,27 @@ public class IndexProxy extends AbstractProxy {
     public void onActivityCreated(){
 
         // 创建到ZXingLite的调用器
-        _arcZxingLite= getInterop().getActivityContext().registerForActivityResult(new ActivityResultContracts.StartActivityForResult(), result -> {
+        _arcZxingLite= registerForResult(new ActivityResultContracts.StartActivityForResult(), result -> {
+
+            // 结果只交给发起本次调用的回调
+            String callbackId = _scanCallbackId;
+            _scanCallbackId = null;
 
             // 按照ZXingLite文档获取和解析扫码结果数据，如果出错或者取消，默认为空字符串，同官方APP
             Intent data = result.getData();
-            String resultS="";
 
             if( null != data ){
-                resultS=CameraScan.parseScanResult(data);
+                String resultS=CameraScan.parseScanResult(data);
                 getInterop().writeLogIntoConsole("ZXing scan completed. Result is : "+ resultS);
+
+                // 将结果写回到单元格或兑现Promise
+                deliver(callbackId, _scanResultCell, resultS);
             }else{
                 // 记录日志
                 getInterop().writeLogIntoConsole("ZXing scan canceled or failed.");
-            }
 
-            // 将结果写回到单元格
-            getInterop().setInputValue(_scanResultCell,resultS);
+                fail(callbackId, ERROR_CANCELED, _scanResultCell, "");
+            }
         });
     }
 }
@@ -3,6 +3,8 @@ package com.huozige.lab.container.proxy;
 import android.util.Log;
 import android.webkit.JavascriptInterface;
 
+import com.huozige.lab.container.proxy.annotation.HACProxy;
+
 import cn.jpush.android.api.JPushInterface;
 
 /**
@@ -10,6 +12,7 @@ import cn.jpush.android.api.JPushInterface;
  * 1.13.0
  * jpush.getRegistrationID 获取用于推送的RID
  */
+@HACProxy(name = "jpush", order = 100, since = "1.13.0")
 public class JPushProxy extends AbstractProxy {
 
     static final String LOG_TAG = "HAC_JPushProxy";
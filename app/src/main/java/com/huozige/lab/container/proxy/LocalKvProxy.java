@@ -1,9 +1,10 @@
 package com.huozige.lab.container.proxy;
 
-import android.util.Log;
 import android.webkit.JavascriptInterface;
 
+import com.huozige.lab.container.proxy.annotation.HACProxy;
 import com.huozige.lab.container.proxy.support.realm.LocalKv_Bundle;
+import com.huozige.lab.container.utilities.HACLog;
 
 import java.net.URI;
 import java.net.URISyntaxException;
@@ -17,7 +18,9 @@ import io.realm.Realm;
  * localKv.remove(key)：从本地数据库中删除特定值
  * localKv.upsertV(key,value,version)：向本地数据库存入值（含版本）
  * localKv.retrieveV(key,version,cell)：从本地数据库中查找特定版本的值，并写入单元格
+ * HAC.call("localKv","retrieveV",key,version)：同上，返回Promise，没有找到时结果为null
  */
+@HACProxy(name = "localKv", order = 70)
 public class LocalKvProxy extends AbstractProxy {
 
     private static final String VERSION_NA = "N/A";
@@ -81,7 +84,7 @@ public class LocalKvProxy extends AbstractProxy {
 
     /**
      * 注册到页面的 localKv.upsertV(key,value,version)方法
-     * 向本地数据库中存入值
+     * 向本地数据库中存入值，在执行队列中完成，Activity销毁时也会执行完毕
      * @param key Key，大小写敏感
      * @param valueString 放入的值
      * @param version 版本号
@@ -89,107 +92,114 @@ public class LocalKvProxy extends AbstractProxy {
     @JavascriptInterface
     public void upsertV(String key, String valueString, String version) {
 
-        if(null == version){
-            version = VERSION_DEFAULT;
-        }
-
-        String finalVersion = version;
-
-        Realm.getDefaultInstance().executeTransaction (transactionRealm -> {
-            LocalKv_Bundle bundle = new LocalKv_Bundle();
-            bundle.key = String.format(KEY_TEMPLATE, getEntryHost(),  key);
-            bundle.value = valueString;
-            bundle.version= finalVersion;
-            transactionRealm.insertOrUpdate(bundle);
-
-            Log.v(LOG_TAG,"LocalKV has been upsert with key " + key +" on " + getEntryHost() +" value: "+ valueString);
+        String finalVersion = null == version ? VERSION_DEFAULT : version;
+
+        enqueueWrite(null, () -> {
+            // Realm的实例只能在创建它的线程中使用，每个任务单独打开并关闭
+            try (Realm realm = Realm.getDefaultInstance()) {
+                realm.executeTransaction(transactionRealm -> {
+                    LocalKv_Bundle bundle = new LocalKv_Bundle();
+                    bundle.key = String.format(KEY_TEMPLATE, getEntryHost(), key);
+                    bundle.value = valueString;
+                    bundle.version = finalVersion;
+                    transactionRealm.insertOrUpdate(bundle);
+
+                    if (HACLog.isVerbose(LOG_TAG)) {
+                        HACLog.v(LOG_TAG, "LocalKV has been upsert with key {} on {} value: {}", key, getEntryHost(), valueString);
+                    }
+                });
+            }
+            return null;
         });
     }
 
     /**
      * 注册到页面的 localKv.retrieveV(key,version,cell)方法
-     * 从本地数据库中查找值，并写入单元格
+     * 从本地数据库中查找值，并写入单元格，在执行队列中完成
      * @param key Key，大小写敏感
      * @param version 版本号
      * @param cell 目标单元格，没有找到键值+版本时返回DATA_NOT_FOUND
      */
     @JavascriptInterface
     public void retrieveV(String key, String version, String cell) {
-
-        if(null == version){
-            version = VERSION_DEFAULT;
-        }
-
-        String finalVersion = version;
-
-        Realm.getDefaultInstance().executeTransaction (transactionRealm -> {
-
-            // 确保按照服务器隔离，在这里拼接出真实存储的Key
-            String bKey = String.format(KEY_TEMPLATE, getEntryHost(), key);
-            LocalKv_Bundle bundle= transactionRealm.where(LocalKv_Bundle.class).equalTo("key",bKey).equalTo("version",finalVersion).findFirst();
-
-            if(bundle !=null){
-                Log.v(LOG_TAG,"Data from LocalKV has been sent. Key: " + bKey);
-                getInterop().setInputValue(cell,bundle.value);
-            }else{
-                getInterop().setInputValue(cell,VALUE_NA);
-                Log.v(LOG_TAG,"Data not found in LocalKV. Key: " + bKey);
-            }
+        enqueue(null, () -> {
+            String value = lookup(key, version);
+            getInterop().setInputValue(cell, value == null ? VALUE_NA : value);
+            return null;
         });
     }
 
+    /**
+     * 注册到页面的 localKv.retrieveVAsync(callbackId,key,version)方法，由HAC.call调用
+     * @param callbackId 页面生成的回调ID
+     * @param key Key，大小写敏感
+     * @param version 版本号
+     */
+    @JavascriptInterface
+    public void retrieveVAsync(String callbackId, String key, String version) {
+        enqueue(callbackId, () -> lookup(key, version)); // 没有找到时以null兑现
+    }
+
     /**
      * 注册到页面的 localKv.retrieveV(key,version,cell)方法
      * 从本地数据库中查找值，并写入变量
+     * 需要直接返回值，调用线程等待执行队列完成查找，确保读到之前提交的写入
      * @param key Key，大小写敏感
      * @param version 版本号
      */
     @JavascriptInterface
     public String retrieveV2(String key, String version) {
-
-        final String[] result = new String[1];
-
-        if(null == version){
-            version = VERSION_DEFAULT;
-        }
-
-        String finalVersion = version;
-
-        Realm.getDefaultInstance().executeTransaction (transactionRealm -> {
-
-            // 确保按照服务器隔离，在这里拼接出真实存储的Key
-            String bKey = String.format(KEY_TEMPLATE, getEntryHost(), key);
-            LocalKv_Bundle bundle= transactionRealm.where(LocalKv_Bundle.class).equalTo("key",bKey).equalTo("version",finalVersion).findFirst();
-
-            if(bundle !=null){
-                Log.v(LOG_TAG,"Data from LocalKV has been sent. Key: " + bKey+" value: "+ bundle.value);
-                result[0] =  bundle.value;
-            }else{
-                Log.v(LOG_TAG,"Data not found in LocalKV. Key: " + bKey);
-                result[0] = VALUE_NA;
-            }
-        });
-
-        return result[0];
+        String value = enqueueAndWait(() -> lookup(key, version));
+        return value == null ? VALUE_NA : value;
     }
 
     /**
      * 注册到页面的 localKv.remove(key)方法
-     * 删除特定键值的数据
+     * 删除特定键值的数据，在执行队列中完成，Activity销毁时也会执行完毕
      * @param key Key，大小写敏感
      */
     @JavascriptInterface
     public void remove(String key) {
-        Realm.getDefaultInstance().executeTransaction (transactionRealm -> {
+        enqueueWrite(null, () -> {
+            try (Realm realm = Realm.getDefaultInstance()) {
+                realm.executeTransaction(transactionRealm -> {
+
+                    // 确保按照服务器隔离，在这里拼接出真实存储的Key
+                    String bKey = String.format(KEY_TEMPLATE, getEntryHost(), key);
+                    LocalKv_Bundle bundle = transactionRealm.where(LocalKv_Bundle.class).equalTo("key", bKey).findFirst();
+                    if (bundle != null) {
+                        bundle.deleteFromRealm();
+                        HACLog.v(LOG_TAG, "Data was deleted from LocalKV. Key: {}", bKey);
+                    }
+                });
+            }
+            return null;
+        });
+    }
+
+    /**
+     * 从本地数据库中查找特定版本的值，可以在任意线程中调用
+     * @param key Key，大小写敏感
+     * @param version 版本号，为空时使用默认版本
+     * @return 值，没有找到时返回空引用
+     */
+    private String lookup(String key, String version) {
+
+        String finalVersion = null == version ? VERSION_DEFAULT : version;
+
+        // 确保按照服务器隔离，在这里拼接出真实存储的Key
+        String bKey = String.format(KEY_TEMPLATE, getEntryHost(), key);
+
+        try (Realm realm = Realm.getDefaultInstance()) {
+            LocalKv_Bundle bundle = realm.where(LocalKv_Bundle.class).equalTo("key", bKey).equalTo("version", finalVersion).findFirst();
 
-            // 确保按照服务器隔离，在这里拼接出真实存储的Key
-            String bKey = String.format(KEY_TEMPLATE, getEntryHost(), key);
-            LocalKv_Bundle bundle= transactionRealm.where(LocalKv_Bundle.class).equalTo("key",bKey).findFirst();
             if (bundle != null) {
-                bundle.deleteFromRealm();
-                Log.v(LOG_TAG,"Data was deleted from LocalKV. Key: " + bKey);
+                HACLog.v(LOG_TAG, "Data from LocalKV has been sent. Key: {}", bKey);
+                return bundle.value; // 托管对象在关闭Realm后不可访问，此处先取出值
             }
-        });
+            HACLog.v(LOG_TAG, "Data not found in LocalKV. Key: {}", bKey);
+            return null;
+        }
     }
 
     @Override
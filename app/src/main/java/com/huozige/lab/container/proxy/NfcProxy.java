@@ -6,6 +6,7 @@ import android.webkit.JavascriptInterface;
 import androidx.activity.result.ActivityResultLauncher;
 import androidx.activity.result.contract.ActivityResultContracts;
 
+import com.huozige.lab.container.proxy.annotation.HACProxy;
 import com.huozige.lab.container.proxy.support.scanner.NfcProxy_ReadingActivity;
 import com.huozige.lab.container.utilities.MiscUtilities;
 
@@ -13,10 +14,18 @@ import com.huozige.lab.container.utilities.MiscUtilities;
  * 让页面能读取NFC标签
  * 1.8.0
  * nfc.readTagId()：弹出模态窗口，读取NFC标签ID并返回到单元格
+ * HAC.call("nfc","readTagId")：同上，返回Promise，NFC不可用时以NotAvailable拒绝，取消或失败时以Canceled拒绝
  */
+@HACProxy(name = "nfc", order = 30, since = "1.8.0")
 public class NfcProxy extends AbstractProxy {
     ActivityResultLauncher<Intent> _arcScanner; // 用来弹出Broadcast模式扫码页面的调用器，用来代替旧版本的startActivityForResult方法。
     String _cellTag; // 用来接收标签的单元格位置信息
+    String _callbackId; // 等待标签的回调ID
+
+    /**
+     * 异步调用失败的原因：NFC不可用
+     */
+    public static final String ERROR_NOT_AVAILABLE = "NotAvailable";
 
     @Override
     public String getName() {
@@ -25,8 +34,24 @@ public class NfcProxy extends AbstractProxy {
 
     @JavascriptInterface
     public void readTagId(String cellTag) {
+        startReading(null, cellTag);
+    }
 
-        // 记录传入的Cell信息
+    /**
+     * 注册到页面的nfc.readTagIdAsync(callbackId)方法，由HAC.call调用
+     *
+     * @param callbackId 页面生成的回调ID
+     */
+    @JavascriptInterface
+    public void readTagIdAsync(String callbackId) {
+        startReading(callbackId, null);
+    }
+
+    private void startReading(String callbackId, String cellTag) {
+
+        // 记录结果的去向
+        rejectSuperseded(_callbackId);
+        _callbackId = callbackId;
         _cellTag = cellTag;
 
         // 调用读取页面
@@ -44,7 +69,11 @@ public class NfcProxy extends AbstractProxy {
     public void onActivityCreated() {
 
         // 创建读取页面
-        _arcScanner = getInterop().getActivityContext().registerForActivityResult(new ActivityResultContracts.StartActivityForResult(), result -> {
+        _arcScanner = registerForResult(new ActivityResultContracts.StartActivityForResult(), result -> {
+
+            // 结果只交给发起本次调用的回调
+            String callbackId = _callbackId;
+            _callbackId = null;
 
             // 获取页面返回的结果
             Intent data = result.getData();
@@ -63,27 +92,27 @@ public class NfcProxy extends AbstractProxy {
                     // 去除非ASCII字符
                     tag= MiscUtilities.removeNonASCIIChars(tag);
 
-                    // 将结果写入单元格
-                    getInterop().setInputValue( _cellTag, tag);
+                    // 将结果写入单元格或兑现Promise
+                    deliver(callbackId, _cellTag, tag);
                 } else if(code == NfcProxy_ReadingActivity.SCAN_STATUS_NA){
                     // 记录日志
                     getInterop().writeLogIntoConsole( "The NFC device is not ready due to not functional or disabled.");
 
                     // 重置单元格
-                    getInterop().setInputValue( _cellTag, "");
+                    fail(callbackId, ERROR_NOT_AVAILABLE, _cellTag, "");
                 }else {
                     // 记录日志
                     getInterop().writeLogIntoConsole( "NFC reading canceled or failed. Return code is : " + code);
 
                     // 重置单元格
-                    getInterop().setInputValue( _cellTag, "");
+                    fail(callbackId, ERROR_CANCELED, _cellTag, "");
                 }
             } else {
                 // 记录日志
                 getInterop().writeErrorIntoConsole( "NFC reading failed.");
 
                 // 重置单元格
-                getInterop().setInputValue( _cellTag, "");
+                fail(callbackId, ERROR_CANCELED, _cellTag, "");
             }
         });
     }
@@ -5,13 +5,14 @@ import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
-import android.util.Log;
 import android.webkit.JavascriptInterface;
 
 import androidx.activity.result.ActivityResultLauncher;
 import androidx.activity.result.contract.ActivityResultContracts;
 
+import com.huozige.lab.container.proxy.annotation.HACProxy;
 import com.huozige.lab.container.proxy.support.scanner.PDAProxy_SingleScanActivity;
+import com.huozige.lab.container.utilities.HACLog;
 import com.huozige.lab.container.utilities.MiscUtilities;
 
 import java.util.ArrayList;
@@ -19,13 +20,16 @@ import java.util.ArrayList;
 /**
  * 让页面具备操作扫码枪硬件的能力
  * pda.modal_scan(cell): 带模态窗口的单次扫码
+ * HAC.call("pda","modal_scan"): 同上，返回Promise，取消或失败时拒绝
  * pda.continuous_scan(cell): 开始持续扫码
  * pda.continuous_scan_stop()： 停止持续扫码
  */
+@HACProxy(name = "pda", order = 20)
 public class PDAProxy extends AbstractProxy {
 
     ActivityResultLauncher<Intent> _arcScanner; // 用来弹出Broadcast模式扫码页面的调用器，用来代替旧版本的startActivityForResult方法。
     String _cell; // 用来接收扫码结果的单元格位置信息
+    String _callbackId; // 等待单次扫码结果的回调ID
 
     Boolean _continueScanOn = false;
     String continueScanCell;
@@ -50,7 +54,11 @@ public class PDAProxy extends AbstractProxy {
     public void onActivityCreated() {
 
         // 创建Broadcast模式扫码页面
-        _arcScanner = getInterop().getActivityContext().registerForActivityResult(new ActivityResultContracts.StartActivityForResult(), result -> {
+        _arcScanner = registerForResult(new ActivityResultContracts.StartActivityForResult(), result -> {
+
+            // 结果只交给发起本次调用的回调
+            String callbackId = _callbackId;
+            _callbackId = null;
 
             // 获取页面返回的结果
             Intent data = result.getData();
@@ -66,21 +74,21 @@ public class PDAProxy extends AbstractProxy {
                     // 记录日志
                     getInterop().writeLogIntoConsole("PDA scan completed. Result is : " + resultS);
 
-                    // 将结果写入单元格
-                    getInterop().setInputValue(_cell, resultS);
+                    // 将结果写入单元格或兑现Promise
+                    deliver(callbackId, _cell, resultS);
                 } else {
                     // 记录日志
                     getInterop().writeLogIntoConsole("PDA scan canceled or failed. Return code is : " + code);
 
                     // 重置单元格
-                    getInterop().setInputValue(_cell, "");
+                    fail(callbackId, ERROR_CANCELED, _cell, "");
                 }
             } else {
                 // 记录日志
                 getInterop().writeErrorIntoConsole("PDA scan failed.");
 
                 // 重置单元格
-                getInterop().setInputValue(_cell, "");
+                fail(callbackId, ERROR_CANCELED, _cell, "");
             }
         });
     }
@@ -113,12 +121,12 @@ public class PDAProxy extends AbstractProxy {
         @Override
         public void onReceive(Context context, Intent intent) {
 
-            Log.v(LOG_TAG, "收到持续扫码结果的广播");
+            HACLog.v(LOG_TAG, "收到持续扫码结果的广播");
 
             // 按照厂商的文档，从广播中获取扫码结果
             String result = intent.getStringExtra(getConfigManager().getScanExtra());
 
-            Log.v(LOG_TAG, "当次扫码结果是：" + result);
+            HACLog.v(LOG_TAG, "当次扫码结果是：{}", result);
 
             if(result == null) result="";
 
@@ -151,7 +159,7 @@ public class PDAProxy extends AbstractProxy {
             } else {
 
                 // 预期外场景需要记录日志
-                Log.e(LOG_TAG, "当前没有处在持续扫描模式，但监听器仍在运行。");
+                HACLog.e(LOG_TAG, "当前没有处在持续扫描模式，但监听器仍在运行。");
             }
         }
     };
@@ -164,8 +172,24 @@ public class PDAProxy extends AbstractProxy {
      */
     @JavascriptInterface
     public void modal_scan(String cellLocation) {
+        startModalScan(null, cellLocation);
+    }
+
+    /**
+     * 注册到页面的pda.modal_scanAsync(callbackId)方法，由HAC.call调用
+     *
+     * @param callbackId 页面生成的回调ID
+     */
+    @JavascriptInterface
+    public void modal_scanAsync(String callbackId) {
+        startModalScan(callbackId, null);
+    }
+
+    private void startModalScan(String callbackId, String cellLocation) {
 
-        // 记录传入的Cell信息
+        // 记录结果的去向
+        rejectSuperseded(_callbackId);
+        _callbackId = callbackId;
         _cell = cellLocation;
 
         // 调用Broadcast模式扫码页面
@@ -185,7 +209,7 @@ public class PDAProxy extends AbstractProxy {
     @JavascriptInterface
     public void continuous_scan(String cellLocation, String limit) {
 
-        Log.v(LOG_TAG, "continuous_scan start with limit : " + limit);
+        HACLog.v(LOG_TAG, "continuous_scan start with limit : {}", limit);
 
         // 记录传入参数
         continueScanCell = cellLocation;
@@ -4,12 +4,14 @@ import android.content.Intent;
 import android.util.Log;
 import android.webkit.JavascriptInterface;
 
+import com.huozige.lab.container.proxy.annotation.HACProxy;
 import com.huozige.lab.container.proxy.support.pdf.PDFPreviewActivity;
 
 /**
  * 让页面具备直接预览PDF文件的能力
  * pdf.preview(url): 预览PDF文件
  */
+@HACProxy(name = "pdf", order = 80)
 public class PDFPreviewProxy extends AbstractProxy{
 
     static final String LOG_TAG = "HAC_PDFPreviewProxy"; // 日志的标识
@@ -0,0 +1,276 @@
+package com.huozige.lab.container.proxy;
+
+import android.os.Process;
+
+import com.huozige.lab.container.utilities.HACLog;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * JS桥的执行队列，每个桥一个
+ * 桥的方法体从WebView唯一的JavaBridge线程移到所有桥共享的有界线程池中执行，一个桥的慢调用不再阻塞其他桥
+ * 同一个桥内的任务按提交顺序执行，同时执行的数量不超过该桥的并发上限（默认为1，即串行）
+ * 任务分为两类：
+ * 1. 只读任务：排队超过超时时间或Activity销毁时被放弃并回调失败；已经开始执行的不会被放弃，超时只会中断它，结果以方法体的实际结果为准
+ * 2. 写入任务：一旦提交就一定执行，不受超时、排队上限和Activity销毁的影响，避免页面以为写入成功或失败而实际相反
+ */
+class ProxyExecutor {
+
+    static final String LOG_TAG = "HAC_ProxyExecutor";
+
+    /**
+     * 共享线程池的线程数
+     */
+    static final int POOL_SIZE = Math.max(2, Math.min(4, Runtime.getRuntime().availableProcessors()));
+
+    /**
+     * 每个桥最多排队的只读任务数，超过时拒绝新任务
+     */
+    static final int MAX_PENDING = 64;
+
+    private static final AtomicInteger __threadCount = new AtomicInteger();
+
+    private static final ExecutorService __pool = Executors.newFixedThreadPool(POOL_SIZE, runnable -> new Thread(() -> {
+        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+        runnable.run();
+    }, "HAC_ProxyWorker_" + __threadCount.incrementAndGet()));
+
+    private static final ScheduledExecutorService __timer = Executors.newSingleThreadScheduledExecutor(runnable -> new Thread(runnable, "HAC_ProxyTimer"));
+
+    private static final Object __mutationLock = new Object();
+    private static int __unfinishedMutations = 0; // 全部桥中尚未完成的写入任务数，访问时需要对__mutationLock同步
+
+    private final String _name;
+    private final int _maxConcurrency;
+    private final long _timeoutMillis;
+
+    private final Queue<Task<?>> _pending = new ArrayDeque<>(); // 等待执行的任务，访问时需要同步
+    private int _running = 0; // 正在执行的任务数，访问时需要同步
+    private int _pendingReads = 0; // 排队中的只读任务数，访问时需要同步
+
+    // 统计信息
+    private final AtomicLong _submitted = new AtomicLong();
+    private final AtomicLong _failed = new AtomicLong();
+    private final AtomicLong _timeouts = new AtomicLong();
+    private final AtomicLong _rejected = new AtomicLong();
+    private final AtomicLong _maxQueueMillis = new AtomicLong();
+
+    /**
+     * 构造函数
+     *
+     * @param name           桥的名称，用于日志
+     * @param maxConcurrency 同时执行的任务数上限
+     * @param timeoutMillis  只读任务的排队超时时间，从提交时开始计算
+     */
+    ProxyExecutor(String name, int maxConcurrency, long timeoutMillis) {
+        _name = name;
+        _maxConcurrency = Math.max(1, maxConcurrency);
+        _timeoutMillis = timeoutMillis;
+    }
+
+    /**
+     * 提交任务，成功或失败在后台线程中回调，且只回调一次
+     *
+     * @param body      任务
+     * @param mutating  是否为写入任务，写入任务一定会执行
+     * @param onSuccess 完成后的回调，参数为任务的返回值
+     * @param onError   失败后的回调：方法体抛出的异常，或只读任务被放弃时的TimeoutException、RejectedExecutionException、CancellationException
+     */
+    <T> void submit(Callable<T> body, boolean mutating, Consumer<T> onSuccess, Consumer<Throwable> onError) {
+
+        _submitted.incrementAndGet();
+        Task<T> task = new Task<>(body, mutating, onSuccess, onError);
+
+        synchronized (this) {
+            if (!mutating && _pendingReads >= MAX_PENDING) {
+                _rejected.incrementAndGet();
+                onError.accept(new RejectedExecutionException("Too many pending calls on proxy : " + _name));
+                return;
+            }
+            if (mutating) {
+                synchronized (__mutationLock) {
+                    __unfinishedMutations++;
+                }
+            } else {
+                _pendingReads++;
+            }
+            _pending.add(task);
+            drain();
+        }
+
+        if (!mutating) __timer.schedule(() -> timeout(task), _timeoutMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 放弃全部排队中的只读任务，在Activity销毁时调用，被放弃的任务以CancellationException回调失败
+     * 排队中的写入任务保留，继续在共享线程池中执行完毕
+     */
+    void cancelPending() {
+        List<Task<?>> canceled = new ArrayList<>();
+        synchronized (this) {
+            Iterator<Task<?>> iterator = _pending.iterator();
+            while (iterator.hasNext()) {
+                Task<?> task = iterator.next();
+                if (task._mutating) continue;
+                iterator.remove();
+                _pendingReads--;
+                canceled.add(task);
+            }
+        }
+        for (Task<?> task : canceled) task.fail(new CancellationException("Proxy call canceled : " + _name));
+    }
+
+    /**
+     * 等待全部桥中已提交的写入任务完成，在结束进程前调用
+     *
+     * @param timeoutMillis 最长等待时间
+     * @return 是否全部完成
+     */
+    static boolean awaitMutations(long timeoutMillis) {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        synchronized (__mutationLock) {
+            while (__unfinishedMutations > 0) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    HACLog.w(LOG_TAG, "{} proxy writes still unfinished after {}ms", __unfinishedMutations, timeoutMillis);
+                    return false;
+                }
+                try {
+                    __mutationLock.wait(remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * 获取统计信息，用于日志
+     */
+    synchronized String getStatistics() {
+        return _name + "{submitted=" + _submitted.get()
+                + ", pending=" + _pending.size()
+                + ", running=" + _running
+                + ", failed=" + _failed.get()
+                + ", timeouts=" + _timeouts.get()
+                + ", rejected=" + _rejected.get()
+                + ", maxQueueMs=" + _maxQueueMillis.get() + "}";
+    }
+
+    /**
+     * 在并发上限内，将排队的任务交给共享线程池，调用时需要同步
+     */
+    private void drain() {
+        while (_running < _maxConcurrency && !_pending.isEmpty()) {
+            Task<?> next = _pending.poll();
+            if (!next._mutating) _pendingReads--;
+            _running++;
+            __pool.execute(() -> {
+                try {
+                    next.run();
+                } finally {
+                    synchronized (ProxyExecutor.this) {
+                        _running--;
+                        drain();
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * 只读任务的超时：仍在排队时放弃并回调失败；已经开始执行时只中断，由方法体的结果决定回调
+     */
+    private void timeout(Task<?> task) {
+        boolean abandoned;
+        synchronized (this) {
+            abandoned = _pending.remove(task);
+            if (abandoned) _pendingReads--;
+        }
+
+        if (abandoned) {
+            _timeouts.incrementAndGet();
+            HACLog.w(LOG_TAG, "Proxy call timed out in queue : {} after {}ms", _name, _timeoutMillis);
+            task.fail(new TimeoutException("Proxy call timed out : " + _name));
+        } else {
+            task.interrupt();
+        }
+    }
+
+    /**
+     * 单个任务
+     */
+    private class Task<T> {
+
+        private final Callable<T> _body;
+        private final boolean _mutating;
+        private final Consumer<T> _onSuccess;
+        private final Consumer<Throwable> _onError;
+        private final long _queuedAt = System.currentTimeMillis();
+        private Thread _runner; // 执行中的线程，超时时中断，访问时需要同步
+
+        Task(Callable<T> body, boolean mutating, Consumer<T> onSuccess, Consumer<Throwable> onError) {
+            _body = body;
+            _mutating = mutating;
+            _onSuccess = onSuccess;
+            _onError = onError;
+        }
+
+        void run() {
+            _maxQueueMillis.accumulateAndGet(System.currentTimeMillis() - _queuedAt, Math::max);
+
+            T value;
+            synchronized (this) {
+                _runner = Thread.currentThread();
+            }
+            try {
+                value = _body.call();
+            } catch (Exception e) {
+                _failed.incrementAndGet();
+                HACLog.e(LOG_TAG, "Error on proxy call : {} Error : {}", _name, e);
+                fail(e);
+                return;
+            } finally {
+                synchronized (this) {
+                    _runner = null;
+                    Thread.interrupted(); // 清除超时留下的中断标记，避免影响线程池中的下一个任务
+                }
+                if (_mutating) {
+                    synchronized (__mutationLock) {
+                        __unfinishedMutations--;
+                        __mutationLock.notifyAll();
+                    }
+                }
+            }
+            _onSuccess.accept(value);
+        }
+
+        /**
+         * 中断执行中的只读任务，写入任务不会被中断
+         */
+        synchronized void interrupt() {
+            if (!_mutating && _runner != null) _runner.interrupt();
+        }
+
+        void fail(Throwable error) {
+            _onError.accept(error);
+        }
+    }
+}
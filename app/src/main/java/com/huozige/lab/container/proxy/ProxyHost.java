@@ -0,0 +1,374 @@
+package com.huozige.lab.container.proxy;
+
+import android.content.Intent;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.webkit.JavascriptInterface;
+import android.webkit.WebView;
+
+import androidx.webkit.WebViewCompat;
+import androidx.webkit.WebViewFeature;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONArray;
+import com.huozige.lab.container.platform.AbstractWebInterop;
+import com.huozige.lab.container.utilities.ConfigManager;
+import com.huozige.lab.container.utilities.HACLog;
+import com.huozige.lab.container.utilities.JsValueMarshaller;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * JS桥的宿主，按需创建和初始化各个桥
+ * WebView支持DOCUMENT_START_SCRIPT时，只向页面注册一个轻量的转发桥，并在每个文档起始时注入脚本，
+ * 以JS的Proxy对象按原有名称（如index、pda）模拟各个桥；页面第一次调用某个桥时才创建该桥并执行onActivityCreated
+ * 否则退回到启动时创建并注册全部桥的方式
+ * 只有ConfigManager中启用的桥才会被创建和注册；经过invoke转发的调用通过编译时生成的分发器执行，不使用反射，并计入BridgeMetrics
+ */
+public class ProxyHost {
+
+    static final String LOG_TAG = "HAC_ProxyHost";
+
+    /**
+     * 注册到页面的转发桥的名称
+     */
+    static final String BRIDGE_NAME = "__hacBridge";
+
+    /**
+     * 在后台线程等待UI线程完成桥的初始化的最长时间，超时后初始化仍会完成
+     */
+    static final long INIT_TIMEOUT_MILLIS = 5000;
+
+    private final AbstractWebInterop _interop;
+    private final ConfigManager _configManager;
+    private final ProxyRegister _register;
+
+    private final List<String> _enabledNames; // 启用的桥的名称，按注册顺序排列
+    private final Map<String, AbstractProxy> _proxies = new ConcurrentHashMap<>(); // 已创建的桥
+    private final Map<String, FutureTask<AbstractProxy>> _initializations = new ConcurrentHashMap<>(); // 执行中或已完成的初始化任务，每个名称一个
+    private volatile boolean _destroyed = false;
+
+    private final BridgeMetrics _metrics = BridgeMetrics.getInstance();
+    private final AtomicLong _totalInitMillis = new AtomicLong();
+    private final AtomicLong _invocations = new AtomicLong();
+
+    /**
+     * 构造函数
+     *
+     * @param interop       HTML页面交互器
+     * @param configManager 配置管理器
+     * @param register      桥的注册器
+     */
+    public ProxyHost(AbstractWebInterop interop, ConfigManager configManager, ProxyRegister register) {
+        _interop = interop;
+        _configManager = configManager;
+        _register = register;
+        _enabledNames = resolveEnabledNames(configManager.getEnabledProxies(), register.getProxyNames());
+    }
+
+    /**
+     * 获取启用的桥的名称
+     *
+     * @return 按注册顺序排列的名称
+     */
+    public List<String> getEnabledProxyNames() {
+        return new ArrayList<>(_enabledNames);
+    }
+
+    /**
+     * 将桥注册到浏览器，必须在UI线程中、页面加载前调用
+     *
+     * @param webView 浏览器
+     */
+    public void install(WebView webView) {
+
+        if (WebViewFeature.isFeatureSupported(WebViewFeature.DOCUMENT_START_SCRIPT)) {
+            webView.addJavascriptInterface(this, BRIDGE_NAME);
+            WebViewCompat.addDocumentStartJavaScript(webView, buildStubScript(), Collections.singleton("*"));
+            HACLog.v(LOG_TAG, "Proxies registered lazily : {}", _enabledNames);
+            return;
+        }
+
+        // 不支持文档起始脚本时，无法保证模拟对象早于页面脚本创建，改为立即创建全部启用的桥
+        for (String name : _enabledNames) {
+            AbstractProxy proxy = getProxy(name);
+            if (proxy != null) webView.addJavascriptInterface(proxy, name);
+        }
+        HACLog.w(LOG_TAG, "Document start script is not supported, enabled proxies initialized eagerly in {}ms", _totalInitMillis.get());
+    }
+
+    /**
+     * 页面上的模拟对象调用桥的方法时，转发到这里
+     *
+     * @param proxyName 桥的名称，如：index
+     * @param method    方法名称，如：ScanCode
+     * @param argsJson  参数的JSON数组
+     * @return 结果的JSON：{"ok":true,"value":返回值}或{"ok":false,"error":原因}
+     */
+    @JavascriptInterface
+    public String invoke(String proxyName, String method, String argsJson) {
+        _invocations.incrementAndGet();
+        StringBuilder result = new StringBuilder();
+        try {
+            AbstractProxy proxy = getProxy(proxyName);
+            if (proxy == null) throw new NoSuchMethodException("Proxy not found or not enabled : " + proxyName);
+
+            ProxyMetadata metadata = _register.getMetadata(proxyName);
+            JSONArray args = argsJson == null ? new JSONArray() : JSON.parseArray(argsJson);
+            int index = metadata.indexOf(method, args.size());
+            if (index < 0) throw new NoSuchMethodException("Method not found : " + proxyName + "." + method + " with " + args.size() + " arguments");
+            Object[] arguments = convertArguments(metadata.Methods.get(index).ParameterTypes, args);
+
+            // 只统计找到的方法，避免页面传入的任意名称占用统计；方法体提交到执行队列时，由执行队列在完成时记录
+            BridgeMetrics.Invocation invocation = _metrics.begin(proxyName, method);
+            boolean failed = true;
+            Object value;
+            try {
+                value = metadata.Invoker.invoke(proxy, index, arguments);
+                failed = false;
+            } finally {
+                _metrics.end(invocation, failed);
+            }
+
+            result.append("{\"ok\":true,\"value\":");
+            JsValueMarshaller.append(result, value).append('}');
+        } catch (Exception e) {
+            HACLog.e(LOG_TAG, "Error on invoking proxy : {}.{} Error : {}", proxyName, method, e);
+            appendError(result, String.valueOf(e));
+        }
+        return result.toString();
+    }
+
+    /**
+     * 获取指定名称的桥，第一次获取时创建并初始化，初始化在UI线程中执行
+     * 每个名称只初始化一次：并发的调用等待同一个初始化任务，等待超时后任务仍会完成，之后的调用直接使用其结果，不会重复初始化
+     *
+     * @param name 桥的名称
+     * @return 桥，名称未注册或未启用时返回空引用
+     * @throws IllegalStateException 初始化失败、超时或被中断
+     */
+    public AbstractProxy getProxy(String name) {
+
+        AbstractProxy proxy = _proxies.get(name);
+        if (proxy != null) return proxy;
+        if (!_enabledNames.contains(name)) return null;
+
+        boolean onUiThread = Looper.myLooper() == Looper.getMainLooper();
+        FutureTask<AbstractProxy> task = _initializations.get(name);
+        if (task == null) {
+            FutureTask<AbstractProxy> created = new FutureTask<>(() -> initialize(name));
+            task = _initializations.putIfAbsent(name, created);
+            if (task == null) {
+                task = created;
+                if (!onUiThread) _interop.getActivityContext().runOnUiThread(task);
+            }
+        }
+
+        // UI线程不能等待自己，直接执行；任务已经执行过时不会重复执行
+        if (onUiThread) task.run();
+
+        try {
+            return task.get(INIT_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Proxy initialization failed : " + name, e.getCause());
+        } catch (TimeoutException e) {
+            throw new IllegalStateException("Proxy initialization timed out : " + name, e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Proxy initialization interrupted : " + name, e);
+        }
+    }
+
+    /**
+     * 创建并初始化桥，在UI线程中执行，每个名称只由getProxy调用一次
+     * 失败时注销已注册的启动器并移除初始化任务，之后的调用可以重试
+     */
+    private AbstractProxy initialize(String name) {
+
+        if (_destroyed) throw new CancellationException("Activity destroyed before proxy initialization : " + name);
+
+        long start = SystemClock.elapsedRealtime();
+        AbstractProxy proxy = _register.createProxy(name);
+        if (proxy == null) return null;
+        if (!name.equals(proxy.getName())) HACLog.w(LOG_TAG, "Proxy name mismatch : @HACProxy {} but getName() {}", name, proxy.getName());
+
+        proxy.setConfigManager(_configManager);
+        proxy.setInterop(_interop);
+        try {
+            proxy.onActivityCreated();
+        } catch (RuntimeException e) {
+            HACLog.e(LOG_TAG, "Error on initializing proxy : {} Error : {}", name, e);
+            proxy.unregisterLaunchers();
+            _initializations.remove(name);
+            throw e;
+        }
+
+        long elapsed = SystemClock.elapsedRealtime() - start;
+        _totalInitMillis.addAndGet(elapsed);
+        HACLog.i(LOG_TAG, "Proxy initialized : {} in {}ms", name, elapsed);
+
+        _proxies.put(name, proxy);
+        return proxy;
+    }
+
+    /**
+     * 将Activity的调用结果分发给已创建的桥
+     *
+     * @return 返回true意味着已被某个桥处理
+     */
+    public boolean processActivityResult(int requestCode, int resultCode, Intent data) {
+        for (AbstractProxy proxy : getCreatedProxies()) {
+            if (proxy.processActivityResult(requestCode, resultCode, data)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Activity销毁时调用，放弃桥排队中的只读调用（写入调用继续执行完毕），通知已创建的桥并注销其启动器
+     */
+    public void onActivityDestroy() {
+        _destroyed = true;
+        for (AbstractProxy proxy : getCreatedProxies()) {
+            proxy.cancelPendingTasks();
+            proxy.onActivityDestroy();
+            proxy.unregisterLaunchers();
+        }
+        _proxies.clear();
+        _initializations.clear();
+    }
+
+    /**
+     * 获取统计信息，用于日志
+     */
+    public String getStatistics() {
+        List<String> executors = new ArrayList<>();
+        for (AbstractProxy proxy : getCreatedProxies()) {
+            String statistics = proxy.getExecutorStatistics();
+            if (statistics != null) executors.add(statistics);
+        }
+        return "created=" + _proxies.keySet()
+                + ", initMs=" + _totalInitMillis.get()
+                + ", invocations=" + _invocations.get()
+                + ", executors=" + executors;
+    }
+
+    /**
+     * 获取已创建的桥，不会触发创建
+     *
+     * @param name 桥的名称
+     * @return 桥，尚未创建时返回空引用
+     */
+    AbstractProxy getCreatedProxy(String name) {
+        return _proxies.get(name);
+    }
+
+    /**
+     * 按注册顺序排列的已创建的桥
+     */
+    private List<AbstractProxy> getCreatedProxies() {
+        List<AbstractProxy> proxies = new ArrayList<>();
+        for (String name : _enabledNames) {
+            AbstractProxy proxy = _proxies.get(name);
+            if (proxy != null) proxies.add(proxy);
+        }
+        return proxies;
+    }
+
+    /**
+     * 解析配置中启用的桥
+     *
+     * @param config     逗号分隔的桥名称，为空时全部启用
+     * @param registered 已注册的桥的名称
+     * @return 按注册顺序排列的名称，忽略未注册的名称
+     */
+    static List<String> resolveEnabledNames(String config, List<String> registered) {
+        if (config == null || config.trim().isEmpty()) return registered;
+
+        LinkedHashSet<String> configured = new LinkedHashSet<>();
+        for (String name : config.split(",")) {
+            String trimmed = name.trim();
+            if (trimmed.isEmpty()) continue;
+            if (registered.contains(trimmed)) {
+                configured.add(trimmed);
+            } else {
+                HACLog.w(LOG_TAG, "Unknown proxy in configuration : {}", trimmed);
+            }
+        }
+
+        List<String> enabled = new ArrayList<>();
+        for (String name : registered) {
+            if (configured.contains(name)) enabled.add(name);
+        }
+        return enabled;
+    }
+
+    /**
+     * 按方法的参数类型转换参数，与WebView直接调用桥时的转换规则一致：字符串参数接受任意值，数值和布尔参数接受对应的值或字符串
+     */
+    static Object[] convertArguments(List<Class<?>> types, JSONArray args) {
+        Object[] converted = new Object[types.size()];
+        for (int i = 0; i < converted.length; i++) {
+            Object arg = args.get(i);
+            Class<?> type = types.get(i);
+            if (type == String.class) {
+                converted[i] = arg == null ? null : arg.toString();
+            } else if (type == int.class || type == Integer.class) {
+                converted[i] = arg instanceof Number ? ((Number) arg).intValue() : Integer.parseInt(String.valueOf(arg));
+            } else if (type == long.class || type == Long.class) {
+                converted[i] = arg instanceof Number ? ((Number) arg).longValue() : Long.parseLong(String.valueOf(arg));
+            } else if (type == double.class || type == Double.class) {
+                converted[i] = arg instanceof Number ? ((Number) arg).doubleValue() : Double.parseDouble(String.valueOf(arg));
+            } else if (type == boolean.class || type == Boolean.class) {
+                converted[i] = arg instanceof Boolean ? arg : Boolean.parseBoolean(String.valueOf(arg));
+            } else {
+                throw new IllegalArgumentException("Unsupported parameter type : " + type.getName());
+            }
+        }
+        return converted;
+    }
+
+    private static void appendError(StringBuilder result, String error) {
+        result.setLength(0);
+        result.append("{\"ok\":false,\"error\":");
+        JsValueMarshaller.append(result, error).append('}');
+    }
+
+    /**
+     * 生成在每个文档起始时执行的脚本：为每个桥创建同名的模拟对象，调用其任意方法都会转发到原生的invoke
+     */
+    String buildStubScript() {
+        StringBuilder names = new StringBuilder();
+        JsValueMarshaller.append(names, _enabledNames);
+
+        return "(function(){\n"
+                + "var bridge = window." + BRIDGE_NAME + ";\n"
+                + "if(!bridge || typeof Proxy === 'undefined'){ return; }\n"
+                + "function createStub(name){\n"
+                + "  return new Proxy({}, {get: function(target, method){\n"
+                // then和toJSON等属性返回undefined，避免被误认为Promise或被序列化
+                + "    if(typeof method !== 'string' || method === 'then' || method === 'toJSON'){ return undefined; }\n"
+                + "    return function(){\n"
+                + "      var result = JSON.parse(bridge.invoke(name, method, JSON.stringify(Array.prototype.slice.call(arguments))));\n"
+                + "      if(!result.ok){ throw new Error(result.error); }\n"
+                + "      return result.value;\n"
+                + "    };\n"
+                + "  }});\n"
+                + "}\n"
+                + "var names = " + names + ";\n"
+                + "for(var i = 0; i < names.length; i++){\n"
+                + "  if(!(names[i] in window)){ window[names[i]] = createStub(names[i]); }\n"
+                + "}\n"
+                + "})();";
+    }
+}
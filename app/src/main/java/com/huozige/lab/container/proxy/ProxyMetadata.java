@@ -0,0 +1,77 @@
+package com.huozige.lab.container.proxy;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * JS桥的元数据，由编译时生成的ProxyIndex创建
+ * 包括注册的名称、顺序、版本、可被页面调用的方法，以及创建桥和调用方法的入口
+ */
+public class ProxyMetadata {
+
+    /**
+     * 按方法序号调用桥的方法，由ProxyIndex生成，不使用反射
+     */
+    interface MethodInvoker {
+        Object invoke(AbstractProxy proxy, int method, Object[] args) throws Exception;
+    }
+
+    /**
+     * 可被页面调用的方法
+     */
+    public static class MethodInfo {
+        public final String Name;
+        public final Class<?> ReturnType;
+        public final List<Class<?>> ParameterTypes;
+
+        MethodInfo(String name, Class<?> returnType, Class<?>... parameterTypes) {
+            Name = name;
+            ReturnType = returnType;
+            ParameterTypes = Collections.unmodifiableList(Arrays.asList(parameterTypes));
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder(Name).append('(');
+            for (int i = 0; i < ParameterTypes.size(); i++) {
+                if (i > 0) sb.append(',');
+                sb.append(ParameterTypes.get(i).getSimpleName());
+            }
+            return sb.append(')').toString();
+        }
+    }
+
+    public final String Name; // 注册到页面的名称
+    public final int Order; // 注册的顺序
+    public final String Since; // 首次提供的HAC版本，未知时为空字符串
+    public final List<MethodInfo> Methods; // 按名称和参数个数排列，序号即调用时使用的方法序号
+
+    final Supplier<AbstractProxy> Factory;
+    final MethodInvoker Invoker;
+
+    ProxyMetadata(String name, int order, String since, Supplier<AbstractProxy> factory, MethodInfo[] methods, MethodInvoker invoker) {
+        Name = name;
+        Order = order;
+        Since = since;
+        Factory = factory;
+        Methods = Collections.unmodifiableList(Arrays.asList(methods));
+        Invoker = invoker;
+    }
+
+    /**
+     * 查找页面可以调用的方法
+     *
+     * @param name          方法名称
+     * @param argumentCount 参数个数
+     * @return 方法序号，没有找到时返回-1
+     */
+    public int indexOf(String name, int argumentCount) {
+        for (int i = 0; i < Methods.size(); i++) {
+            MethodInfo method = Methods.get(i);
+            if (method.Name.equals(name) && method.ParameterTypes.size() == argumentCount) return i;
+        }
+        return -1;
+    }
+}
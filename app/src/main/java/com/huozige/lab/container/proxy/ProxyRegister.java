@@ -1,23 +1,54 @@
 package com.huozige.lab.container.proxy;
 
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
- * JS桥的注册机制，可获取当前版本中所有桥的列表
+ * JS桥的注册机制，可获取当前版本中所有桥的名称
+ * 桥的列表在编译时根据@HACProxy生成（见ProxyIndex），新增桥时只需在类上标记注解
+ * 注册的是桥的元数据和工厂，桥在页面第一次调用时才由ProxyHost创建
  */
 public class ProxyRegister {
 
     private static ProxyRegister __instance;
 
-    private final List<AbstractProxy> _proxies;
+    private final Map<String, ProxyMetadata> _proxies; // 注册的名称 -> 元数据
 
     /**
-     * 获取全部交互代理
-     * @return 代理列表
+     * 获取全部交互代理的名称，按注册顺序排列
+     * @return 名称列表
      */
-    public List<AbstractProxy> getAllProxies(){
-        return _proxies;
+    public List<String> getProxyNames(){
+        return new ArrayList<>(_proxies.keySet());
+    }
+
+    /**
+     * 获取全部交互代理的元数据，按注册顺序排列
+     * @return 元数据列表
+     */
+    public List<ProxyMetadata> getAllMetadata(){
+        return new ArrayList<>(_proxies.values());
+    }
+
+    /**
+     * 获取指定名称的交互代理的元数据
+     * @param name 注册的名称
+     * @return 元数据，名称未注册时返回空引用
+     */
+    public ProxyMetadata getMetadata(String name){
+        return _proxies.get(name);
+    }
+
+    /**
+     * 创建指定名称的交互代理
+     * @param name 注册的名称
+     * @return 新的代理，名称未注册时返回空引用
+     */
+    public AbstractProxy createProxy(String name){
+        ProxyMetadata metadata = _proxies.get(name);
+        return metadata == null ? null : metadata.Factory.get();
     }
 
     /**
@@ -35,23 +66,11 @@ public class ProxyRegister {
 
     private ProxyRegister(){
 
-        this._proxies = new ArrayList<>();
-
-        this._proxies.add(new IndexProxy()); // 兼容活字格官方APP插件
-
-        this._proxies.add(new PDAProxy()); // PDA激光扫码
-        this._proxies.add(new NfcProxy()); // 读取NFC
-        this._proxies.add(new GeoProxy()); // 获取地理位置
+        this._proxies = new LinkedHashMap<>();
 
-        this._proxies.add(new DeviceInfoProxy()); // 读取设备信息
-
-        this._proxies.add(new AppProxy()); // 操作HAC壳子的功能
-        this._proxies.add(new LocalKvProxy()); // 操作本地离线存储
-        this._proxies.add(new PDFPreviewProxy()); // 预览PDF文件
-
-        this._proxies.add(new DothanPrinterProxy()); // 操作德佟打印机
-
-        this._proxies.add(new JPushProxy()); // 操作极光推送
+        for (ProxyMetadata metadata : ProxyIndex.PROXIES) {
+            this._proxies.put(metadata.Name, metadata);
+        }
 
         __instance = this;
     }
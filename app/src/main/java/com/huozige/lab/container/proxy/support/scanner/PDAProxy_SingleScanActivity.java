@@ -5,11 +5,11 @@ import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
 import android.os.Bundle;
-import android.util.Log;
 import android.view.View;
 
 import com.huozige.lab.container.BaseActivity;
 import com.huozige.lab.container.R;
+import com.huozige.lab.container.utilities.HACLog;
 
 /**
  * 单次扫描：等待PDA扫码广播的页面，该页面支持用户自行取消
@@ -30,12 +30,12 @@ public class PDAProxy_SingleScanActivity extends BaseActivity {
         @Override
         public void onReceive(Context context, Intent intent) {
 
-            Log.v(LOG_TAG, "收到单次扫码结果的广播");
+            HACLog.v(LOG_TAG, "收到单次扫码结果的广播");
 
             // 按照厂商的文档，从广播中获取扫码结果
             String result = intent.getStringExtra( (null == getConfigManager().getScanExtra())? getString( R.string.feature_scanner_extra_key_barcode_broadcast):getConfigManager().getScanExtra());
 
-            Log.v(LOG_TAG, "扫码结果是：" + result);
+            HACLog.v(LOG_TAG, "扫码结果是：{}", result);
 
             // 将其打包发给调用者
             Intent res = new Intent();
@@ -88,7 +88,7 @@ public class PDAProxy_SingleScanActivity extends BaseActivity {
         // 注册广播监听
         registerReceiver(_scanReceiver, intentFilter);
 
-        Log.v(LOG_TAG, "扫码结果广播已注册");
+        HACLog.v(LOG_TAG, "扫码结果广播已注册");
     }
 
     /**
@@ -99,7 +99,7 @@ public class PDAProxy_SingleScanActivity extends BaseActivity {
         // 取消监听
         unregisterReceiver(_scanReceiver);
 
-        Log.v(LOG_TAG, "已取消注册扫码结果广播");
+        HACLog.v(LOG_TAG, "已取消注册扫码结果广播");
 
         super.onPause();
     }
@@ -0,0 +1,50 @@
+package com.huozige.lab.container.utilities;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * 以流的形式读取ByteBuffer（如内存映射的文件），不复制底层数据
+ */
+public class ByteBufferInputStream extends InputStream {
+
+    private final ByteBuffer _buffer;
+
+    /**
+     * 构造函数
+     *
+     * @param buffer 需要读取的数据，读取时会移动其position
+     */
+    public ByteBufferInputStream(ByteBuffer buffer) {
+        _buffer = buffer;
+    }
+
+    @Override
+    public int read() {
+        return _buffer.hasRemaining() ? (_buffer.get() & 0xFF) : -1;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) {
+        if (len == 0) return 0;
+        if (!_buffer.hasRemaining()) return -1;
+
+        int count = Math.min(len, _buffer.remaining());
+        _buffer.get(b, off, count);
+        return count;
+    }
+
+    @Override
+    public long skip(long n) {
+        if (n <= 0) return 0;
+
+        int count = (int) Math.min(n, _buffer.remaining());
+        _buffer.position(_buffer.position() + count);
+        return count;
+    }
+
+    @Override
+    public int available() {
+        return _buffer.remaining();
+    }
+}
@@ -31,6 +31,14 @@ public class ConfigManager {
 
     static final String PREFERENCE_KEY_BYPASS_COMPATIBLE_CHECK = "BCC"; // 是否忽略兼容性检查
 
+    static final String PREFERENCE_KEY_RESOURCE_PACK_PATH = "RPP"; // 离线资源包的路径
+
+    static final String PREFERENCE_KEY_SWR_URL_PATTERNS = "SWR"; // 启用请求缓存的URL白名单
+
+    static final String PREFERENCE_KEY_OFFLINE_FIRST_ENTRY = "OFE"; // 是否优先使用缓存的入口页面
+
+    static final String PREFERENCE_KEY_ENABLED_PROXIES = "EPX"; // 启用的JS桥
+
     final Activity _context;
 
     public ConfigManager(Activity context) {
@@ -54,6 +62,20 @@ public class ConfigManager {
                 this.upsertTCD(parseHexInteger(config.getString(PREFERENCE_KEY_TCD)));
                 this.upsertHA(config.getString(PREFERENCE_KEY_HA).equalsIgnoreCase("1") || config.getString(PREFERENCE_KEY_HA).equalsIgnoreCase("true") || config.getString(PREFERENCE_KEY_HA).equalsIgnoreCase("yes"));
                 this.upsertBypassCompatibleCheck(config.getString(PREFERENCE_KEY_BYPASS_COMPATIBLE_CHECK).equalsIgnoreCase("1") || config.getString(PREFERENCE_KEY_BYPASS_COMPATIBLE_CHECK).equalsIgnoreCase("true") || config.getString(PREFERENCE_KEY_BYPASS_COMPATIBLE_CHECK).equalsIgnoreCase("yes"));
+
+                // 可选的配置
+                if (config.containsKey(PREFERENCE_KEY_RESOURCE_PACK_PATH)) {
+                    this.upsertResourcePackPath(config.getString(PREFERENCE_KEY_RESOURCE_PACK_PATH));
+                }
+                if (config.containsKey(PREFERENCE_KEY_SWR_URL_PATTERNS)) {
+                    this.upsertSWRUrlPatterns(config.getString(PREFERENCE_KEY_SWR_URL_PATTERNS));
+                }
+                if (config.containsKey(PREFERENCE_KEY_OFFLINE_FIRST_ENTRY)) {
+                    this.upsertOfflineFirstEntry(config.getString(PREFERENCE_KEY_OFFLINE_FIRST_ENTRY).equalsIgnoreCase("1") || config.getString(PREFERENCE_KEY_OFFLINE_FIRST_ENTRY).equalsIgnoreCase("true") || config.getString(PREFERENCE_KEY_OFFLINE_FIRST_ENTRY).equalsIgnoreCase("yes"));
+                }
+                if (config.containsKey(PREFERENCE_KEY_ENABLED_PROXIES)) {
+                    this.upsertEnabledProxies(config.getString(PREFERENCE_KEY_ENABLED_PROXIES));
+                }
                 return true;
             } else {
                 return false;
@@ -158,6 +180,23 @@ public class ConfigManager {
         return sharedPref.getBoolean(PREFERENCE_KEY_BYPASS_COMPATIBLE_CHECK,defaultVisible );
     }
 
+    /**
+     * 获取是否优先使用缓存的入口页面（离线优先），启用后冷启动时立即显示上一次加载的页面，再在后台校验
+     *
+     * @return 默认为不启用
+     */
+    public Boolean getOfflineFirstEntry() {
+        // 打开配置库
+        SharedPreferences sharedPref = _context.getSharedPreferences(
+                PREFERENCE_NAME, Activity.MODE_PRIVATE);
+
+        // 配置文件中的默认值
+        boolean defaultEnabled = Boolean.parseBoolean(_context.getString(R.string.app_customize_offline_first_entry));
+
+        // 从数据库中加载
+        return sharedPref.getBoolean(PREFERENCE_KEY_OFFLINE_FIRST_ENTRY, defaultEnabled);
+    }
+
     public String getAboutUrl() {
         return getStringValue(_context, PREFERENCE_KEY_ULR_ABOUT, R.string.app_customize_url_for_about_menu);
     }
@@ -174,6 +213,33 @@ public class ConfigManager {
         return getStringValue(_context, PREFERENCE_KEY_PWD, R.string.app_customize_url_for_help_menu);
     }
 
+    /**
+     * 获取活字格离线资源包在服务器上的路径
+     *
+     * @return 路径模板，%s为活字格版本号，为空意味着不下载资源包
+     */
+    public String getResourcePackPath() {
+        return getStringValue(_context, PREFERENCE_KEY_RESOURCE_PACK_PATH, R.string.app_customize_resource_pack_path);
+    }
+
+    /**
+     * 获取启用请求缓存（stale-while-revalidate）的URL白名单
+     *
+     * @return 每行一个正则表达式，匹配完整的URL，为空意味着不启用
+     */
+    public String getSWRUrlPatterns() {
+        return getStringValue(_context, PREFERENCE_KEY_SWR_URL_PATTERNS, R.string.app_customize_swr_url_patterns);
+    }
+
+    /**
+     * 获取启用的JS桥，未启用的桥不会被创建，也不会注册到页面
+     *
+     * @return 逗号分隔的桥名称，如：index,pda,localKv，为空意味着全部启用
+     */
+    public String getEnabledProxies() {
+        return getStringValue(_context, PREFERENCE_KEY_ENABLED_PROXIES, R.string.app_customize_enabled_proxies);
+    }
+
     //==================== 下面是设置
 
     public void upsertActionBarVisible(Boolean value) {
@@ -203,6 +269,15 @@ public class ConfigManager {
         sharedPref.edit().putBoolean(PREFERENCE_KEY_BYPASS_COMPATIBLE_CHECK, value).apply();
     }
 
+    public void upsertOfflineFirstEntry(Boolean value) {
+        // 打开配置库
+        SharedPreferences sharedPref = _context.getSharedPreferences(
+                PREFERENCE_NAME, Activity.MODE_PRIVATE);
+
+        // 保存到配置库
+        sharedPref.edit().putBoolean(PREFERENCE_KEY_OFFLINE_FIRST_ENTRY, value).apply();
+    }
+
     public void upsertAboutUrl(String value) {
         upsertStringValue(_context, PREFERENCE_KEY_ULR_ABOUT, value);
     }
@@ -219,6 +294,18 @@ public class ConfigManager {
         upsertStringValue(_context, PREFERENCE_KEY_PWD, value);
     }
 
+    public void upsertResourcePackPath(String value) {
+        upsertStringValue(_context, PREFERENCE_KEY_RESOURCE_PACK_PATH, value);
+    }
+
+    public void upsertSWRUrlPatterns(String value) {
+        upsertStringValue(_context, PREFERENCE_KEY_SWR_URL_PATTERNS, value);
+    }
+
+    public void upsertEnabledProxies(String value) {
+        upsertStringValue(_context, PREFERENCE_KEY_ENABLED_PROXIES, value);
+    }
+
     public void upsertEntry(String value) {
         upsertStringValue(_context, PREFERENCE_KEY_ENTRY, value);
     }
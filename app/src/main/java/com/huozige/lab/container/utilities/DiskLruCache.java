@@ -0,0 +1,240 @@
+package com.huozige.lab.container.utilities;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 按总字节数淘汰的磁盘缓存，最近最少使用的文件优先淘汰
+ * 同一个目录在进程内只对应一个实例，通过open方法获取
+ */
+public class DiskLruCache {
+
+    static final String LOG_TAG = "HAC_DiskLruCache";
+
+    static final String TEMP_SUFFIX = ".tmp";
+
+    private static final Map<String, DiskLruCache> __instances = new HashMap<>();
+
+    private final File _directory;
+    private final long _maxBytes;
+
+    // 文件名 -> 文件长度，按访问顺序排列
+    private final LinkedHashMap<String, Long> _entries = new LinkedHashMap<>(64, 0.75f, true);
+    private long _totalBytes = 0;
+    private boolean _loaded = false;
+
+    /**
+     * 获取指定目录的缓存实例
+     *
+     * @param directory 缓存目录，位于应用私有存储中
+     * @param maxBytes  允许占用的最大字节数
+     * @return 进程内共享的缓存实例
+     */
+    public static synchronized DiskLruCache open(File directory, long maxBytes) {
+        String key = directory.getAbsolutePath();
+        DiskLruCache cache = __instances.get(key);
+        if (cache == null) {
+            cache = new DiskLruCache(directory, maxBytes);
+            __instances.put(key, cache);
+        }
+        return cache;
+    }
+
+    private DiskLruCache(File directory, long maxBytes) {
+        _directory = directory;
+        _maxBytes = maxBytes;
+    }
+
+    /**
+     * 查找缓存文件
+     *
+     * @param key 缓存的键
+     * @return 缓存文件，没有命中则返回空引用
+     */
+    public synchronized File get(String key) {
+        ensureLoaded();
+
+        String name = toFileName(key);
+        if (_entries.get(name) == null) return null; // 同时刷新访问顺序
+
+        File file = new File(_directory, name);
+        if (!file.exists()) {
+            // 文件被外部删除
+            _totalBytes -= _entries.remove(name);
+            return null;
+        }
+
+        // 记录访问时间，供下次启动时恢复访问顺序
+        //noinspection ResultOfMethodCallIgnored
+        file.setLastModified(System.currentTimeMillis());
+        return file;
+    }
+
+    /**
+     * 将流写入缓存，写入完成后才对外可见
+     *
+     * @param key  缓存的键
+     * @param data 数据流，由调用方负责关闭
+     * @return 缓存文件，超过容量上限而未能保留时返回空引用
+     * @throws IOException 写入失败
+     */
+    public File put(String key, InputStream data) throws IOException {
+        String name = toFileName(key);
+
+        // 先写入临时文件，避免其他线程读到不完整的内容
+        File temp = new File(_directory, name + "." + Thread.currentThread().getId() + TEMP_SUFFIX);
+        synchronized (this) {
+            ensureLoaded();
+        }
+
+        long length = 0;
+        try (OutputStream out = new FileOutputStream(temp)) {
+            byte[] buff = new byte[8192];
+            int numRead;
+            while ((numRead = data.read(buff)) > 0) {
+                out.write(buff, 0, numRead);
+                length += numRead;
+            }
+        } catch (IOException e) {
+            //noinspection ResultOfMethodCallIgnored
+            temp.delete();
+            throw e;
+        }
+
+        synchronized (this) {
+            File file = new File(_directory, name);
+            if (!temp.renameTo(file)) {
+                //noinspection ResultOfMethodCallIgnored
+                temp.delete();
+                throw new IOException("Failed to commit cache file : " + file);
+            }
+
+            Long previous = _entries.put(name, length);
+            if (previous != null) _totalBytes -= previous;
+            _totalBytes += length;
+
+            trimToSize();
+            return _entries.containsKey(name) ? file : null;
+        }
+    }
+
+    /**
+     * 删除缓存
+     *
+     * @param key 缓存的键
+     */
+    public synchronized void remove(String key) {
+        ensureLoaded();
+
+        String name = toFileName(key);
+        Long length = _entries.remove(name);
+        if (length != null) {
+            _totalBytes -= length;
+            //noinspection ResultOfMethodCallIgnored
+            new File(_directory, name).delete();
+        }
+    }
+
+    /**
+     * 清空缓存
+     */
+    public synchronized void clear() {
+        ensureLoaded();
+
+        for (String name : _entries.keySet()) {
+            //noinspection ResultOfMethodCallIgnored
+            new File(_directory, name).delete();
+        }
+        _entries.clear();
+        _totalBytes = 0;
+    }
+
+    /**
+     * 获取当前占用的字节数
+     *
+     * @return 字节数
+     */
+    public synchronized long size() {
+        ensureLoaded();
+        return _totalBytes;
+    }
+
+    /**
+     * 首次使用时扫描目录，按文件的修改时间恢复访问顺序
+     */
+    private void ensureLoaded() {
+        if (_loaded) return;
+        _loaded = true;
+
+        if (!_directory.exists() && !_directory.mkdirs()) {
+            HACLog.e(LOG_TAG, "Failed to create cache directory : {}", _directory);
+            return;
+        }
+
+        File[] files = _directory.listFiles();
+        if (files == null) return;
+
+        Arrays.sort(files, (a, b) -> Long.compare(a.lastModified(), b.lastModified()));
+        for (File file : files) {
+            if (file.getName().endsWith(TEMP_SUFFIX)) {
+                // 上次运行时未完成的写入
+                //noinspection ResultOfMethodCallIgnored
+                file.delete();
+            } else {
+                _entries.put(file.getName(), file.length());
+                _totalBytes += file.length();
+            }
+        }
+
+        trimToSize();
+
+        HACLog.v(LOG_TAG, "Disk cache loaded : {} , {} files, {} bytes", _directory, _entries.size(), _totalBytes);
+    }
+
+    /**
+     * 淘汰最近最少使用的文件，直到总字节数不超过上限
+     */
+    private void trimToSize() {
+        Iterator<Map.Entry<String, Long>> it = _entries.entrySet().iterator();
+        while (_totalBytes > _maxBytes && it.hasNext()) {
+            Map.Entry<String, Long> eldest = it.next();
+            //noinspection ResultOfMethodCallIgnored
+            new File(_directory, eldest.getKey()).delete();
+            _totalBytes -= eldest.getValue();
+            it.remove();
+
+            HACLog.v(LOG_TAG, "Disk cache evicted : {}", eldest.getKey());
+        }
+    }
+
+    /**
+     * 将键转换为文件名，避免路径中的特殊字符
+     *
+     * @param key 缓存的键
+     * @return SHA-1形式的文件名
+     */
+    static String toFileName(String key) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(key.getBytes(StandardCharsets.UTF_8));
+            StringBuilder sb = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                sb.append(Character.forDigit((b >> 4) & 0xF, 16));
+                sb.append(Character.forDigit(b & 0xF, 16));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
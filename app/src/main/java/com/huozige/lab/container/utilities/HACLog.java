@@ -0,0 +1,216 @@
+package com.huozige.lab.container.utilities;
+
+import android.util.Log;
+
+import com.huozige.lab.container.BuildConfig;
+
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * 分级日志，替代直接调用android.util.Log
+ * 1. 消息使用{}占位符，只有在级别允许输出时才拼接，高频调用处不再无条件地构造字符串
+ * 2. 每个TAG可以在运行时单独设置级别，未设置的使用默认级别（调试版本为VERBOSE，发布版本为INFO）
+ * 3. 发布版本中v和d在编译期即被关闭（BuildConfig.DEBUG为常量），不再输出；但调用处的参数仍会求值和装箱，
+ *    只有开启minifyEnabled时才会由proguard-rules.pro中的规则整体移除（当前未开启），高频调用处需要以isVerbose包裹
+ * 4. 最近的日志保存在内存的环形缓冲区中，用于诊断，不依赖logcat
+ */
+public class HACLog {
+
+    /**
+     * 调试日志的编译期开关，发布版本中相关代码会被编译器作为死代码移除
+     */
+    static final boolean DEBUG_ENABLED = BuildConfig.DEBUG;
+
+    /**
+     * 环形缓冲区保留的条数
+     */
+    static final int RING_SIZE = 256;
+
+    private static final Map<String, Integer> __levels = new ConcurrentHashMap<>(); // TAG -> 最低输出级别
+    private static volatile int __defaultLevel = DEBUG_ENABLED ? Log.VERBOSE : Log.INFO;
+    private static volatile int __ringLevel = Log.INFO;
+
+    private static final AtomicReferenceArray<Entry> __ring = new AtomicReferenceArray<>(RING_SIZE);
+    private static final AtomicLong __ringPosition = new AtomicLong();
+
+    /**
+     * 环形缓冲区中的一条日志
+     */
+    public static class Entry {
+        public long Time;
+        public int Level;
+        public String Tag;
+        public String Message;
+
+        @Override
+        public String toString() {
+            return new SimpleDateFormat("MM-dd HH:mm:ss.SSS", Locale.ROOT).format(new Date(Time)) + " " + "??VDIWEA".charAt(Math.min(Level, 7)) + "/" + Tag + ": " + Message;
+        }
+    }
+
+    /**
+     * 设置指定TAG的最低输出级别
+     *
+     * @param tag   日志的TAG
+     * @param level 级别，如：Log.DEBUG；为空时恢复默认级别
+     */
+    public static void setLevel(String tag, Integer level) {
+        if (level == null) {
+            __levels.remove(tag);
+        } else {
+            __levels.put(tag, level);
+        }
+    }
+
+    /**
+     * 设置未单独设置级别的TAG的最低输出级别
+     *
+     * @param level 级别，如：Log.INFO
+     */
+    public static void setDefaultLevel(int level) {
+        __defaultLevel = level;
+    }
+
+    /**
+     * 设置写入环形缓冲区的最低级别，与输出到logcat的级别无关
+     *
+     * @param level 级别，如：Log.WARN
+     */
+    public static void setRingLevel(int level) {
+        __ringLevel = level;
+    }
+
+    /**
+     * 指定TAG的指定级别是否会输出到logcat
+     */
+    public static boolean isLoggable(String tag, int level) {
+        Integer tagLevel = __levels.get(tag);
+        return level >= (tagLevel == null ? __defaultLevel : tagLevel);
+    }
+
+    /**
+     * 指定TAG的VERBOSE日志是否会输出，用于跳过仅为日志准备参数的代码；发布版本中恒为false
+     */
+    public static boolean isVerbose(String tag) {
+        return DEBUG_ENABLED && isLoggable(tag, Log.VERBOSE);
+    }
+
+    public static void v(String tag, String message) {
+        if (DEBUG_ENABLED) log(Log.VERBOSE, tag, message, null);
+    }
+
+    public static void v(String tag, String message, Object arg) {
+        if (DEBUG_ENABLED) log(Log.VERBOSE, tag, message, new Object[]{arg});
+    }
+
+    public static void v(String tag, String message, Object arg1, Object arg2) {
+        if (DEBUG_ENABLED) log(Log.VERBOSE, tag, message, new Object[]{arg1, arg2});
+    }
+
+    public static void v(String tag, String message, Object... args) {
+        if (DEBUG_ENABLED) log(Log.VERBOSE, tag, message, args);
+    }
+
+    public static void d(String tag, String message) {
+        if (DEBUG_ENABLED) log(Log.DEBUG, tag, message, null);
+    }
+
+    public static void d(String tag, String message, Object arg) {
+        if (DEBUG_ENABLED) log(Log.DEBUG, tag, message, new Object[]{arg});
+    }
+
+    public static void d(String tag, String message, Object... args) {
+        if (DEBUG_ENABLED) log(Log.DEBUG, tag, message, args);
+    }
+
+    public static void i(String tag, String message, Object... args) {
+        log(Log.INFO, tag, message, args);
+    }
+
+    public static void w(String tag, String message, Object... args) {
+        log(Log.WARN, tag, message, args);
+    }
+
+    public static void e(String tag, String message, Object... args) {
+        log(Log.ERROR, tag, message, args);
+    }
+
+    /**
+     * 获取环形缓冲区中的日志，按时间先后排列
+     *
+     * @return 最近的日志
+     */
+    public static List<Entry> getRecentEntries() {
+        long end = __ringPosition.get();
+        long start = Math.max(0, end - RING_SIZE);
+        List<Entry> entries = new ArrayList<>((int) (end - start));
+        for (long i = start; i < end; i++) {
+            Entry entry = __ring.get((int) (i % RING_SIZE));
+            if (entry != null) entries.add(entry);
+        }
+        return entries;
+    }
+
+    /**
+     * 将环形缓冲区中的日志转换为文本，用于诊断信息的导出
+     */
+    public static String dumpRecentEntries() {
+        StringBuilder sb = new StringBuilder();
+        for (Entry entry : getRecentEntries()) {
+            sb.append(entry).append('\n');
+        }
+        return sb.toString();
+    }
+
+    private static void log(int level, String tag, String message, Object[] args) {
+        boolean toLogcat = isLoggable(tag, level);
+        boolean toRing = level >= __ringLevel;
+        if (!toLogcat && !toRing) return;
+
+        String formatted = format(message, args);
+        if (toLogcat) Log.println(level, tag, formatted);
+        if (toRing) {
+            Entry entry = new Entry();
+            entry.Time = System.currentTimeMillis();
+            entry.Level = level;
+            entry.Tag = tag;
+            entry.Message = formatted;
+            __ring.set((int) (__ringPosition.getAndIncrement() % RING_SIZE), entry);
+        }
+    }
+
+    /**
+     * 依次用参数替换消息中的{}，多余的参数追加在末尾，其中的异常附加调用栈
+     */
+    static String format(String message, Object[] args) {
+        if (args == null || args.length == 0) return message;
+
+        StringBuilder sb = new StringBuilder(message.length() + 16 * args.length);
+        int argIndex = 0;
+        int start = 0;
+        int position;
+        while (argIndex < args.length && (position = message.indexOf("{}", start)) >= 0) {
+            sb.append(message, start, position).append(args[argIndex++]);
+            start = position + 2;
+        }
+        sb.append(message, start, message.length());
+
+        for (; argIndex < args.length; argIndex++) {
+            Object arg = args[argIndex];
+            if (arg instanceof Throwable) {
+                sb.append('\n').append(Log.getStackTraceString((Throwable) arg));
+            } else {
+                sb.append(' ').append(arg);
+            }
+        }
+        return sb.toString();
+    }
+}
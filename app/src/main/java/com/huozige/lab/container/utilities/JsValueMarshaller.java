@@ -0,0 +1,175 @@
+package com.huozige.lab.container.utilities;
+
+import java.lang.reflect.Array;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * 将Java的值转换为JavaScript字面量，用于拼接到在浏览器执行的脚本中
+ * 支持：null、String（及其他CharSequence）、Number、Boolean、Character、List等集合、数组、Map、byte[]（Base64字符串）
+ * 其他类型按toString()的结果作为字符串处理；输出同时是合法的JSON，可以直接通过消息通道发送
+ * 转义在一次遍历中直接写入目标缓冲区，不产生中间字符串
+ */
+public class JsValueMarshaller {
+
+    /**
+     * 线程复用的缓冲区超过此长度时不再保留，避免长期占用大块内存
+     */
+    static final int MAX_RETAINED_CAPACITY = 64 * 1024;
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private static final ThreadLocal<StringBuilder> __buffer = ThreadLocal.withInitial(() -> new StringBuilder(256));
+
+    /**
+     * 将值转换为JavaScript字面量
+     *
+     * @param value 需要转换的值
+     * @return JavaScript字面量，如：null、12、true、"text"、[1,"a"]、{"k":"v"}
+     */
+    public static String toLiteral(Object value) {
+        StringBuilder sb = __buffer.get();
+        sb.setLength(0);
+        try {
+            append(sb, value);
+            return sb.toString();
+        } finally {
+            if (sb.capacity() > MAX_RETAINED_CAPACITY) __buffer.set(new StringBuilder(256));
+        }
+    }
+
+    /**
+     * 将值以JavaScript字面量的形式追加到缓冲区中
+     *
+     * @param sb    目标缓冲区
+     * @param value 需要转换的值
+     * @return 目标缓冲区
+     */
+    public static StringBuilder append(StringBuilder sb, Object value) {
+
+        if (value == null) {
+            sb.append("null");
+        } else if (value instanceof CharSequence) {
+            appendString(sb, (CharSequence) value);
+        } else if (value instanceof Boolean) {
+            sb.append(((Boolean) value).booleanValue());
+        } else if (value instanceof Double || value instanceof Float) {
+            appendDouble(sb, ((Number) value).doubleValue());
+        } else if (value instanceof Number) {
+            sb.append(value);
+        } else if (value instanceof Character) {
+            appendString(sb, String.valueOf(value));
+        } else if (value instanceof byte[]) {
+            appendString(sb, Base64.getEncoder().encodeToString((byte[]) value));
+        } else if (value instanceof Map) {
+            sb.append('{');
+            boolean first = true;
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                if (!first) sb.append(',');
+                appendString(sb, String.valueOf(entry.getKey()));
+                sb.append(':');
+                append(sb, entry.getValue());
+                first = false;
+            }
+            sb.append('}');
+        } else if (value instanceof Collection) {
+            sb.append('[');
+            boolean first = true;
+            for (Object item : (Collection<?>) value) {
+                if (!first) sb.append(',');
+                append(sb, item);
+                first = false;
+            }
+            sb.append(']');
+        } else if (value.getClass().isArray()) {
+            sb.append('[');
+            int length = Array.getLength(value);
+            for (int i = 0; i < length; i++) {
+                if (i > 0) sb.append(',');
+                append(sb, Array.get(value, i));
+            }
+            sb.append(']');
+        } else {
+            appendString(sb, value.toString());
+        }
+        return sb;
+    }
+
+    /**
+     * 将字符串以双引号字符串字面量的形式追加到缓冲区中
+     * 除JSON要求的转义外，还转义了U+2028、U+2029（旧版引擎视为换行）和"</"（避免提前结束script标签）
+     *
+     * @param sb  目标缓冲区
+     * @param str 原始字符串
+     * @return 目标缓冲区
+     */
+    public static StringBuilder appendString(StringBuilder sb, CharSequence str) {
+
+        int length = str.length();
+        sb.ensureCapacity(sb.length() + length + 2);
+        sb.append('"');
+
+        // 连续的无需转义的字符整段追加
+        int start = 0;
+        for (int i = 0; i < length; i++) {
+            char c = str.charAt(i);
+            String escaped;
+            switch (c) {
+                case '"':
+                    escaped = "\\\"";
+                    break;
+                case '\\':
+                    escaped = "\\\\";
+                    break;
+                case '\n':
+                    escaped = "\\n";
+                    break;
+                case '\r':
+                    escaped = "\\r";
+                    break;
+                case '\t':
+                    escaped = "\\t";
+                    break;
+                case '\b':
+                    escaped = "\\b";
+                    break;
+                case '\f':
+                    escaped = "\\f";
+                    break;
+                case '/':
+                    if (i == 0 || str.charAt(i - 1) != '<') continue;
+                    escaped = "\\/";
+                    break;
+                default:
+                    if (c >= 0x20 && c != '\u2028' && c != '\u2029') continue;
+                    escaped = null;
+                    break;
+            }
+
+            sb.append(str, start, i);
+            if (escaped != null) {
+                sb.append(escaped);
+            } else {
+                sb.append("\\u").append(HEX[(c >> 12) & 0xf]).append(HEX[(c >> 8) & 0xf]).append(HEX[(c >> 4) & 0xf]).append(HEX[c & 0xf]);
+            }
+            start = i + 1;
+        }
+
+        sb.append(str, start, length);
+        return sb.append('"');
+    }
+
+    /**
+     * 浮点数：与JSON.stringify一致，非有限值输出null；整数值不带小数部分
+     */
+    private static void appendDouble(StringBuilder sb, double value) {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            sb.append("null");
+        } else if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+            sb.append((long) value);
+        } else {
+            sb.append(value);
+        }
+    }
+}
@@ -26,6 +26,17 @@ public class PermissionsUtility {
      * @param successAction 成功申请权限后的动作
      */
     public static void asyncRequirePermissions(Context context, String[] permissions, Runnable successAction){
+        asyncRequirePermissions(context, permissions, successAction, null);
+    }
+
+    /**
+     * 申请特定的敏感权限
+     * @param context 操作的上下文（有界面）
+     * @param permissions 本次申请的敏感权限
+     * @param successAction 成功申请全部权限后的动作
+     * @param failureAction 被拒绝或只申请到部分权限后的动作，最多执行一次，可以为空
+     */
+    public static void asyncRequirePermissions(Context context, String[] permissions, Runnable successAction, Runnable failureAction){
 
         Log.v(LOG_TAG,"开始申请权限："+String.join(",", permissions));
 
@@ -33,12 +44,21 @@ public class PermissionsUtility {
                 .permission(permissions)
                 .request(new OnPermissionCallback() {
 
+                    private boolean _failed = false; // 部分成功时会先后收到onGranted和onDenied，失败的动作只执行一次
+
+                    private void onFailed() {
+                        if (_failed || failureAction == null) return;
+                        _failed = true;
+                        failureAction.run();
+                    }
+
                     @Override
                     public void onGranted(@NonNull List<String> permissions, boolean all) {
                         if (!all) {
                             Log.w(LOG_TAG,"申请的权限中部分成功，部分失败，已提示给用户");
 
                             Toast.makeText(context,context.getString(R.string.ui_toast_permissions_denied),Toast.LENGTH_LONG).show();
+                            onFailed();
                         }else{
                             Log.v(LOG_TAG,"权限已成功申请，执行回调");
 
@@ -55,11 +75,13 @@ public class PermissionsUtility {
                             Toast.makeText(context,context.getString(R.string.ui_toast_permissions_denied_never),Toast.LENGTH_LONG).show();
                             // 如果是被永久拒绝就跳转到应用权限系统设置页面
                             XXPermissions.startPermissionActivity(context, permissions);
+                            onFailed();
                         } else {
 
                             Log.e(LOG_TAG,"权限申请被拒绝，已提示给用户");
 
                             Toast.makeText(context,context.getString(R.string.ui_toast_permissions_denied),Toast.LENGTH_LONG).show();
+                            onFailed();
                         }
                     }
                 });
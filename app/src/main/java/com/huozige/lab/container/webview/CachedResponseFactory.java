@@ -0,0 +1,143 @@
+package com.huozige.lab.container.webview;
+
+import android.webkit.WebResourceRequest;
+import android.webkit.WebResourceResponse;
+
+import com.huozige.lab.container.platform.AbstractStaticFilesCacheFilter;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.BoundedInputStream;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 为命中缓存的请求构建带有完整HTTP语义的响应
+ * 包括Content-Length、Cache-Control、ETag、Last-Modified，并支持单个区间的Range请求
+ * 注意：WebResourceResponse不允许使用3xx状态码，条件请求（If-None-Match）只能以200返回完整内容，
+ * 由于内容来自本地，这并不会产生网络开销
+ */
+class CachedResponseFactory {
+
+    /**
+     * 离线缓存的内容在同一URL下不会变化
+     */
+    static final String CACHE_CONTROL_IMMUTABLE = "public, max-age=31536000, immutable";
+
+    /**
+     * 构建响应
+     *
+     * @param request             浏览器的请求
+     * @param hint                缓存信息
+     * @param data                缓存文件的流（已解压），由响应负责关闭
+     * @param defaultLastModified 缓存信息中没有修改时间时使用的默认值（毫秒）
+     * @return 响应
+     */
+    static WebResourceResponse create(WebResourceRequest request, AbstractStaticFilesCacheFilter.CacheHint hint, InputStream data, long defaultLastModified) throws IOException {
+
+        Map<String, String> headers = new HashMap<>();
+        headers.put("Cache-Control", CACHE_CONTROL_IMMUTABLE);
+
+        if (hint.ETag != null) {
+            headers.put("ETag", hint.ETag);
+        }
+
+        long lastModified = hint.LastModified > 0 ? hint.LastModified : defaultLastModified;
+        if (lastModified > 0) {
+            headers.put("Last-Modified", formatHttpDate(lastModified));
+        }
+
+        // 长度未知时无法处理Range，直接返回完整内容
+        if (hint.Length < 0) {
+            return new WebResourceResponse(hint.MIME, hint.Encoding, 200, "OK", headers, data);
+        }
+
+        headers.put("Accept-Ranges", "bytes");
+
+        Map<String, String> requestHeaders = request.getRequestHeaders();
+        String range = getHeader(requestHeaders, "Range");
+        String ifRange = getHeader(requestHeaders, "If-Range");
+
+        // If-Range与当前内容不一致时，忽略Range，返回完整内容
+        if (range != null && (ifRange == null || ifRange.equals(hint.ETag))) {
+
+            long[] span = parseRange(range, hint.Length);
+            if (span == null) {
+                data.close();
+                headers.put("Content-Range", "bytes */" + hint.Length);
+                headers.put("Content-Length", "0");
+                return new WebResourceResponse(hint.MIME, hint.Encoding, 416, "Range Not Satisfiable", headers, new ByteArrayInputStream(new byte[0]));
+            }
+
+            long length = span[1] - span[0] + 1;
+            IOUtils.skipFully(data, span[0]);
+
+            headers.put("Content-Range", "bytes " + span[0] + "-" + span[1] + "/" + hint.Length);
+            headers.put("Content-Length", String.valueOf(length));
+            return new WebResourceResponse(hint.MIME, hint.Encoding, 206, "Partial Content", headers, new BoundedInputStream(data, length));
+        }
+
+        headers.put("Content-Length", String.valueOf(hint.Length));
+        return new WebResourceResponse(hint.MIME, hint.Encoding, 200, "OK", headers, data);
+    }
+
+    /**
+     * 解析Range请求头，仅支持单个区间，如：bytes=0-499、bytes=500-、bytes=-500
+     *
+     * @param range  Range请求头
+     * @param length 内容长度
+     * @return 起止位置（含），无法满足时返回空引用
+     */
+    static long[] parseRange(String range, long length) {
+
+        range = range.trim();
+        if (!range.startsWith("bytes=") || range.indexOf(',') >= 0) return null;
+
+        String spec = range.substring("bytes=".length()).trim();
+        int dash = spec.indexOf('-');
+        if (dash < 0) return null;
+
+        try {
+            long start, end;
+            if (dash == 0) {
+                // 末尾的若干字节
+                long suffix = Long.parseLong(spec.substring(1));
+                if (suffix <= 0) return null;
+                start = Math.max(0, length - suffix);
+                end = length - 1;
+            } else {
+                start = Long.parseLong(spec.substring(0, dash));
+                end = dash == spec.length() - 1 ? length - 1 : Math.min(Long.parseLong(spec.substring(dash + 1)), length - 1);
+            }
+
+            if (start < 0 || start > end || start >= length) return null;
+            return new long[]{start, end};
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 忽略大小写获取请求头
+     */
+    static String getHeader(Map<String, String> headers, String name) {
+        if (headers == null) return null;
+        for (Map.Entry<String, String> header : headers.entrySet()) {
+            if (name.equalsIgnoreCase(header.getKey())) return header.getValue();
+        }
+        return null;
+    }
+
+    /**
+     * 格式化为HTTP日期，如：Tue, 3 Jun 2008 11:05:30 GMT
+     */
+    static String formatHttpDate(long millis) {
+        return DateTimeFormatter.RFC_1123_DATE_TIME.format(Instant.ofEpochMilli(millis).atZone(ZoneOffset.UTC));
+    }
+}
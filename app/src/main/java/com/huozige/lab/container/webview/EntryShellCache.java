@@ -0,0 +1,157 @@
+package com.huozige.lab.container.webview;
+
+import android.net.Uri;
+import android.util.Log;
+import android.webkit.WebResourceRequest;
+import android.webkit.WebResourceResponse;
+
+import org.apache.commons.io.FileUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * 入口页面的离线优先缓存，用于冷启动时立即显示页面
+ * 上一次成功加载的入口页面HTML及其关键资源（入口页面加载期间请求的、同源的脚本和样式）保存在磁盘上，
+ * 启动时直接返回本地内容，同时在后台向服务器校验；内容变化时通过回调通知，由调用方决定是否重新加载
+ * 关键资源的清单在本次加载完成后保存，下次启动时生效
+ */
+public class EntryShellCache {
+
+    static final String LOG_TAG = "HAC_EntryShellCache";
+
+    /**
+     * 默认允许占用的最大字节数
+     */
+    public static final long DEFAULT_MAX_BYTES = 8L * 1024 * 1024;
+
+    static final int MAX_CRITICAL_RESOURCES = 16;
+    static final String CRITICAL_SUFFIX = ".critical";
+
+    private final String _entry;
+    private final String _entryHost;
+    private final File _criticalFile;
+    private final StaleWhileRevalidateCache _cache;
+
+    private final Set<String> _pendingCritical = ConcurrentHashMap.newKeySet(); // 本次加载入口页面时请求的关键资源
+    private volatile boolean _recording = true; // 第一个页面加载完成前记录关键资源
+
+    /**
+     * 构造函数
+     *
+     * @param directory 缓存目录，位于应用私有存储中
+     * @param maxBytes  允许占用的最大字节数
+     * @param entry     入口页面的地址
+     */
+    public EntryShellCache(File directory, long maxBytes, String entry) {
+        _entry = entry;
+        _entryHost = Uri.parse(entry).getHost();
+        _criticalFile = new File(directory.getParentFile(), directory.getName() + CRITICAL_SUFFIX);
+
+        // 入口页面和上一次记录的关键资源均按完整的URL精确匹配
+        StringBuilder patterns = new StringBuilder(Pattern.quote(entry));
+        for (String url : loadCritical()) {
+            patterns.append('\n').append(Pattern.quote(url));
+        }
+        _cache = new StaleWhileRevalidateCache(directory, maxBytes, patterns.toString());
+    }
+
+    /**
+     * 处理请求，命中时立即返回本地内容
+     *
+     * @param request 浏览器的请求
+     * @return 命中时返回本地内容，否则返回空引用
+     */
+    public WebResourceResponse intercept(WebResourceRequest request) {
+
+        if (_recording && !request.isForMainFrame() && isCritical(request.getUrl())) {
+            _pendingCritical.add(request.getUrl().toString());
+        }
+
+        return _cache.intercept(request);
+    }
+
+    /**
+     * 通知当前服务器的版本标识，版本变化时作废全部缓存
+     *
+     * @param stamp 版本标识
+     */
+    public void onVersionStamp(String stamp) {
+        _cache.onVersionStamp(stamp);
+    }
+
+    /**
+     * 主框架的页面加载完成时调用，只在第一次调用时结束记录
+     * 入口页面加载完成后保存关键资源的清单；被重定向到其他页面（如登录页）时，记录到的资源不属于入口页面，不保存
+     *
+     * @param url 页面地址
+     */
+    public void onPageFinished(String url) {
+        if (!_recording) return;
+        _recording = false;
+
+        List<String> critical = new ArrayList<>(_pendingCritical);
+        _pendingCritical.clear();
+        if (!_entry.equals(url)) {
+            Log.v(LOG_TAG, "First page is not the entry, critical resources discarded : " + url);
+            return;
+        }
+
+        if (critical.size() > MAX_CRITICAL_RESOURCES) critical = critical.subList(0, MAX_CRITICAL_RESOURCES);
+        try {
+            FileUtils.writeLines(_criticalFile, StandardCharsets.UTF_8.name(), critical);
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Error on saving critical resources : " + e);
+        }
+    }
+
+    /**
+     * 设置入口页面在后台校验后发生变化时的回调，回调在后台线程中执行
+     *
+     * @param listener 回调
+     */
+    public void setOnEntryUpdatedListener(Runnable listener) {
+        _cache.setOnUpdatedListener(url -> {
+            if (_entry.equals(url)) {
+                Log.v(LOG_TAG, "Entry page changed on server : " + url);
+                listener.run();
+            }
+        });
+    }
+
+    /**
+     * 获取统计信息，用于日志
+     */
+    public String getStatistics() {
+        return _cache.getStatistics();
+    }
+
+    /**
+     * 与入口页面同源的脚本和样式视为关键资源
+     */
+    private boolean isCritical(Uri url) {
+        String path = url.getPath();
+        if (path == null || url.getHost() == null || !url.getHost().equalsIgnoreCase(_entryHost)) return false;
+
+        String lower = path.toLowerCase();
+        return lower.endsWith(".js") || lower.endsWith(".css");
+    }
+
+    /**
+     * 读取上一次记录的关键资源
+     */
+    private List<String> loadCritical() {
+        try {
+            if (_criticalFile.exists()) return FileUtils.readLines(_criticalFile, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Error on loading critical resources : " + e);
+        }
+        return new ArrayList<>();
+    }
+}
@@ -2,9 +2,9 @@ package com.huozige.lab.container.webview;
 
 import android.annotation.SuppressLint;
 import android.content.Intent;
+import android.content.pm.PackageManager;
 import android.graphics.Bitmap;
 import android.net.http.SslError;
-import android.util.Log;
 import android.webkit.HttpAuthHandler;
 import android.webkit.SslErrorHandler;
 import android.webkit.WebResourceError;
@@ -15,14 +15,18 @@ import android.webkit.WebViewClient;
 
 import androidx.activity.result.ActivityResultLauncher;
 import androidx.activity.result.contract.ActivityResultContracts;
-import androidx.appcompat.app.AppCompatActivity;
 
 import com.huozige.lab.container.BaseActivity;
 import com.huozige.lab.container.platform.AbstractStaticFilesCacheFilter;
+import com.huozige.lab.container.platform.AbstractWebInterop;
+import com.huozige.lab.container.utilities.ByteBufferInputStream;
+import com.huozige.lab.container.utilities.HACLog;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.util.zip.GZIPInputStream;
 
 /**
  * 处理页面的事件，实现异常处理等功能
@@ -31,38 +35,28 @@ public class HACWebViewClient extends WebViewClient {
 
     BaseActivity _context; // 包含有浏览器内核的上下文
     static final String LOG_TAG = "HAC_WebViewClient"; // 日志的标识
+    static final int GZIP_BUFFER_SIZE = 64 * 1024; // 解压离线缓存时使用的缓冲区大小
     private AbstractStaticFilesCacheFilter cacheFilter;
-
-    private boolean _alreadyInjected = false;
+    private AbstractWebInterop webInterop; // 页面加载完成后建立消息通道
+    private StaleWhileRevalidateCache responseCache; // 可选的GET请求缓存，为空意味着不启用
+    private EntryShellCache entryShellCache; // 入口页面的离线优先缓存，为空意味着不启用
+    private ImageVariantCache imageCache; // 服务器图片的缩小版本缓存，为空意味着不启用
+    private NavigationPrefetcher prefetcher; // 基于跳转历史的预取，为空意味着不启用
 
 
     private final ActivityResultLauncher<Intent> _arc;
     private HttpAuthHandler _authHandler;
 
-    private String _hacJsContent;
+    private volatile ScriptInjector _scriptInjector = new ScriptInjector(null); // 辅助脚本的注入引擎，注册脚本前不做任何处理
 
-    private void loadJsContent() {
-        try {
-            InputStream in = this._context.getAssets().open("hac_inject_before_loaded.js");
-            byte[] buff = new byte[1024];
-            ByteArrayOutputStream fromFile = new ByteArrayOutputStream();
-            do {
-                int numRead = in.read(buff);
-                if (numRead <= 0) {
-                    break;
-                }
-                fromFile.write(buff, 0, numRead);
-            } while (true);
-            _hacJsContent = fromFile.toString();
-            in.close();
-            fromFile.close();
+    // 页面加载的状态，只在UI线程中访问
+    private boolean _pageStarted = false; // 是否开始加载过页面
+    private boolean _pageLoading = false; // 是否有页面正在加载
+    private boolean _catchUpInjection = false; // 辅助脚本的注册晚于当前文档，需要在加载完成时补充注入
 
-            Log.v(LOG_TAG, "hac_inject_before_loaded.js文件读取完毕，长度为" + _hacJsContent.length());
+    private final HotAssetCache _hotAssetCache; // 热点缓存文件的内存缓存
 
-        } catch (IOException e) {
-            Log.e(LOG_TAG, e.toString());
-        }
-    }
+    private long _assetsLastModified; // Assets随应用一起更新，以应用的更新时间作为其修改时间
 
     /**
      * 简单的构造函数
@@ -81,15 +75,22 @@ public class HACWebViewClient extends WebViewClient {
                 String usr = data.getStringExtra(HttpAuthActivity.BUNDLE_EXTRA_RESULT_USER);
                 String pwd = data.getStringExtra(HttpAuthActivity.BUNDLE_EXTRA_RESULT_PASSWORD);
 
-                Log.v(LOG_TAG, "HTTP Auth认证开始：" + usr);
+                HACLog.v(LOG_TAG, "HTTP Auth认证开始：{}", usr);
                 _authHandler.proceed(usr, pwd);
             } else {
-                Log.e(LOG_TAG, "前页面传回的的用户认证信息为空，即将重试");
+                HACLog.e(LOG_TAG, "前页面传回的的用户认证信息为空，即将重试");
             }
 
         });
 
-        loadJsContent();
+
+        _hotAssetCache = HotAssetCache.getInstance(activity);
+
+        try {
+            _assetsLastModified = activity.getPackageManager().getPackageInfo(activity.getPackageName(), 0).lastUpdateTime;
+        } catch (PackageManager.NameNotFoundException e) {
+            HACLog.e(LOG_TAG, "获取应用更新时间出错：{}", e);
+        }
     }
 
     /**
@@ -100,7 +101,7 @@ public class HACWebViewClient extends WebViewClient {
     @Override
     public void onReceivedSslError(WebView view, SslErrorHandler handler, SslError error) {
 
-        Log.e(LOG_TAG, "SSL验证出错，应用将跳过：" + error.toString());
+        HACLog.e(LOG_TAG, "SSL验证出错，应用将跳过：{}", error.toString());
 
         // 对SSL错误不予处理
         handler.proceed();
@@ -113,7 +114,7 @@ public class HACWebViewClient extends WebViewClient {
     @Override
     public boolean shouldOverrideUrlLoading(WebView view, WebResourceRequest request) {
 
-        Log.v(LOG_TAG, "请求地址：" + request.getUrl());
+        HACLog.v(LOG_TAG, "请求地址：{}", request.getUrl());
 
         // 获取请求地址
         String reqUriSchema = request.getUrl().getScheme();
@@ -128,7 +129,7 @@ public class HACWebViewClient extends WebViewClient {
             return false;
         } else {
             // 其他协议使用系统服务打开
-            Log.v(LOG_TAG, "导航到系统服务：" + request.getUrl());
+            HACLog.v(LOG_TAG, "导航到系统服务：{}", request.getUrl());
             return true;
         }
     }
@@ -139,7 +140,7 @@ public class HACWebViewClient extends WebViewClient {
      */
     @Override
     public void onReceivedError(WebView view, WebResourceRequest request, WebResourceError error) {
-        Log.e(LOG_TAG, "页面加载出错：" + request.getUrl() + " ，错误：" + error.getDescription());
+        HACLog.e(LOG_TAG, "页面加载出错：{} ，错误：{}", request.getUrl(), error.getDescription());
 
         // 对超时错误做特殊处理
         if (error.getErrorCode() == WebViewClient.ERROR_CONNECT || error.getErrorCode() == WebViewClient.ERROR_TIMEOUT || error.getErrorCode() == WebViewClient.ERROR_HOST_LOOKUP) {
@@ -159,8 +160,10 @@ public class HACWebViewClient extends WebViewClient {
     @Override
     public void onPageStarted(WebView view, String url, Bitmap favicon) {
         super.onPageStarted(view, url, favicon);
-        _alreadyInjected = false;
-        Log.v(LOG_TAG, "页面加载开始：" + url);
+        _pageStarted = true;
+        _pageLoading = true;
+        if (webInterop != null) webInterop.closeMessageChannel();
+        HACLog.v(LOG_TAG, "页面加载开始：{}", url);
     }
 
     /**
@@ -170,12 +173,40 @@ public class HACWebViewClient extends WebViewClient {
     @Override
     public void onPageFinished(WebView view, String url) {
         super.onPageFinished(view, url);
-        Log.v(LOG_TAG, "页面加载完成：" + url);
+        _pageLoading = false;
+        if (_catchUpInjection) {
+            _catchUpInjection = false;
+            _scriptInjector.inject(view);
+        }
+        HACLog.v(LOG_TAG, "页面加载完成：{}", url);
+        if (webInterop != null) webInterop.openMessageChannel(_context.getConfigManager().getEntry());
+        if (entryShellCache != null) entryShellCache.onPageFinished(url);
+        if (prefetcher != null) prefetcher.onPageFinished(url);
+
+        // 统计信息的拼接开销较大，只在输出时才获取
+        if (HACLog.isVerbose(LOG_TAG)) {
+            HACLog.v(LOG_TAG, "内存缓存统计：{}", _hotAssetCache.getStatistics());
+            if (responseCache != null) HACLog.v(LOG_TAG, "请求缓存统计：{}", responseCache.getStatistics());
+            if (entryShellCache != null) HACLog.v(LOG_TAG, "入口页面缓存统计：{}", entryShellCache.getStatistics());
+            if (imageCache != null) HACLog.v(LOG_TAG, "图片缓存统计：{}", imageCache.getStatistics());
+            if (prefetcher != null) HACLog.v(LOG_TAG, "预取统计：{}", prefetcher.getStatistics());
+        }
+    }
+
+    /**
+     * 记录页面跳转，包括单页应用通过History API或锚点完成的跳转
+     */
+    @Override
+    public void doUpdateVisitedHistory(WebView view, String url, boolean isReload) {
+        super.doUpdateVisitedHistory(view, url, isReload);
+        if (prefetcher != null && !isReload) {
+            prefetcher.onNavigated(url);
+        }
     }
 
     @Override
     public void onReceivedHttpAuthRequest(WebView view, HttpAuthHandler handler, String host, String realm) {
-        Log.v(LOG_TAG, "本页面需要HTTP认证，当前没有认证或认证失败，即将弹出认证窗口");
+        HACLog.v(LOG_TAG, "本页面需要HTTP认证，当前没有认证或认证失败，即将弹出认证窗口");
         _authHandler = handler;
         _arc.launch(new Intent(_context, HttpAuthActivity.class));
     }
@@ -190,19 +221,24 @@ public class HACWebViewClient extends WebViewClient {
     @Override
     public WebResourceResponse shouldInterceptRequest(WebView view, final WebResourceRequest request) {
 
-        String path = request.getUrl().getPath();
         String schema = request.getUrl().getScheme();
-        if (!_alreadyInjected && path!=null && path.toLowerCase().contains(".js") && _hacJsContent != null && !_hacJsContent.isEmpty()) {
-            ((AppCompatActivity)view.getContext()).runOnUiThread(()-> view.evaluateJavascript(_hacJsContent, value -> Log.v(LOG_TAG, "JS资源文件已注入页面：" + value)));
-            _alreadyInjected = true;
-        }
 
         if (request.getUrl() != null) {
 
             // 仅处理HTTP和HTTPS
             schema = (schema  == null)? "":schema.trim();
             if (schema.equalsIgnoreCase("http") || schema.equalsIgnoreCase("https")) {
+                // 记录当前页面使用的资源，用于预取
+                if (prefetcher != null && "GET".equalsIgnoreCase(request.getMethod()) && !request.isForMainFrame()) {
+                    prefetcher.onResourceRequested(request.getUrl());
+                }
+
                 try {
+                    // 服务器版本变化时先作废已有的缓存；带版本号的静态资源大多由下面的离线缓存直接返回，必须在此之前检查
+                    String versionStamp = cacheFilter.getVersionStamp(request.getUrl());
+                    if (entryShellCache != null) entryShellCache.onVersionStamp(versionStamp);
+                    if (responseCache != null) responseCache.onVersionStamp(versionStamp);
+
                     // 调用缓存处理器
                     AbstractStaticFilesCacheFilter.CacheHint cacheFile = cacheFilter.filter(request.getUrl());
 
@@ -210,15 +246,38 @@ public class HACWebViewClient extends WebViewClient {
                     if (cacheFile != null) {
 
                         // 打开本地缓存文件，获取流
-                        InputStream localCache = _context.getAssets().open(cacheFile.LocalFilePath);
+                        InputStream localCache = openLocalCache(cacheFile);
+
+                        // 将本地文件返回给浏览器，Assets中的文件以应用的更新时间作为修改时间
+                        long defaultLastModified = cacheFile.Storage == AbstractStaticFilesCacheFilter.CacheHint.STORAGE_ASSETS ? _assetsLastModified : 0;
+                        return CachedResponseFactory.create(request, cacheFile, localCache, defaultLastModified);
+                    }
 
-                        // 将本地文件返回给浏览器
-                        return new WebResourceResponse(cacheFile.MIME, cacheFile.Encoding, localCache);
+                    // 调用入口页面缓存，冷启动时立即返回上一次的页面
+                    if (entryShellCache != null) {
+                        WebResourceResponse shellResponse = entryShellCache.intercept(request);
+                        if (shellResponse != null) return _scriptInjector.splice(shellResponse);
                     }
+
+                    // 调用图片缓存，返回缩小后的版本
+                    if (imageCache != null) {
+                        WebResourceResponse imageResponse = imageCache.intercept(request);
+                        if (imageResponse != null) return imageResponse;
+                    }
+
+                    // 调用请求缓存
+                    if (responseCache != null) {
+                        WebResourceResponse cachedResponse = responseCache.intercept(request);
+                        if (cachedResponse != null) return _scriptInjector.splice(cachedResponse);
+                    }
+
+                    // 不支持文档起始脚本时，为HTML文档插入辅助脚本
+                    WebResourceResponse splicedResponse = _scriptInjector.intercept(request);
+                    if (splicedResponse != null) return splicedResponse;
                 } catch (IOException e) {
 
                     // 仅记录日志
-                    Log.e(LOG_TAG, "Error on loading cache for : " + request.getUrl().toString() + " Error : " + e);
+                    HACLog.e(LOG_TAG, "Error on loading cache for : {} Error : {}", request.getUrl().toString(), e);
                 }
             }
         }
@@ -227,7 +286,83 @@ public class HACWebViewClient extends WebViewClient {
         return super.shouldInterceptRequest(view, request);
     }
 
+    /**
+     * 打开本地缓存文件，优先从内存中获取
+     *
+     * @param cacheFile 缓存信息
+     * @return 文件流（已解压）
+     */
+    private InputStream openLocalCache(AbstractStaticFilesCacheFilter.CacheHint cacheFile) throws IOException {
+        // Assets下的相对路径与私有存储中的绝对路径不会重复，可以直接作为键
+        return _hotAssetCache.open(cacheFile.LocalFilePath, cacheFile.Length, () -> openLocalCacheFromStorage(cacheFile));
+    }
+
+    /**
+     * 从APK或私有存储中打开本地缓存文件
+     *
+     * @param cacheFile 缓存信息
+     * @return 文件流，预先压缩的文件会边读边解压
+     */
+    private InputStream openLocalCacheFromStorage(AbstractStaticFilesCacheFilter.CacheHint cacheFile) throws IOException {
+
+        InputStream localCache;
+        if (cacheFile.Storage == AbstractStaticFilesCacheFilter.CacheHint.STORAGE_FILES) {
+
+            // 应用私有存储中的文件采用内存映射读取，映射建立后即可关闭文件
+            try (FileChannel channel = new RandomAccessFile(cacheFile.LocalFilePath, "r").getChannel()) {
+                localCache = new ByteBufferInputStream(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+            }
+        } else {
+            localCache = _context.getAssets().open(cacheFile.LocalFilePath);
+        }
+
+        if (cacheFile.Gzipped) {
+            localCache = new GZIPInputStream(localCache, GZIP_BUFFER_SIZE);
+        }
+
+        return localCache;
+    }
+
+    /**
+     * 为浏览器注册辅助脚本，在WebView创建后于UI线程调用一次
+     * 脚本异步加载，注册可能晚于第一个页面：此时为当前文档补充注入一次，之后的文档由注册的脚本负责
+     *
+     * @param view   浏览器
+     * @param script 需要注入的脚本，来自InjectedScriptStore
+     */
+    public void installInjectedScripts(WebView view, String script) {
+        ScriptInjector injector = new ScriptInjector(script);
+        injector.install(view);
+        _scriptInjector = injector;
+
+        if (_pageStarted && !_pageLoading) {
+            injector.inject(view);
+        } else if (_pageStarted || view.getUrl() != null) {
+            _catchUpInjection = true; // 文档尚未加载完成，等加载完成时注入
+        }
+    }
+
+    public void setWebInterop(AbstractWebInterop webInterop) {
+        this.webInterop = webInterop;
+    }
+
     public void setStaticFilesCacheFilter(AbstractStaticFilesCacheFilter cacheFilter) {
         this.cacheFilter = cacheFilter;
     }
+
+    public void setResponseCache(StaleWhileRevalidateCache responseCache) {
+        this.responseCache = responseCache;
+    }
+
+    public void setEntryShellCache(EntryShellCache entryShellCache) {
+        this.entryShellCache = entryShellCache;
+    }
+
+    public void setImageCache(ImageVariantCache imageCache) {
+        this.imageCache = imageCache;
+    }
+
+    public void setPrefetcher(NavigationPrefetcher prefetcher) {
+        this.prefetcher = prefetcher;
+    }
 }
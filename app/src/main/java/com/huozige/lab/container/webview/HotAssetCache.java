@@ -0,0 +1,161 @@
+package com.huozige.lab.container.webview;
+
+import android.app.ActivityManager;
+import android.content.Context;
+import android.util.Log;
+import android.util.LruCache;
+
+import org.apache.commons.io.IOUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 热点缓存文件的内存缓存，按总字节数淘汰最近最少使用的文件
+ * 保存的是解压后的内容，命中时无需再从APK或磁盘读取和解压
+ * 为避免一次性的大文件挤占空间，文件第二次被请求时才放入内存
+ */
+public class HotAssetCache {
+
+    static final String LOG_TAG = "HAC_HotAssetCache";
+
+    /**
+     * 单个文件占用预算的上限比例，超过的文件不放入内存
+     */
+    static final int MAX_ENTRY_FRACTION = 4;
+
+    /**
+     * 记录请求过一次的文件的数量上限
+     */
+    static final int MAX_CANDIDATES = 256;
+
+    private static HotAssetCache __instance;
+
+    private final LruCache<String, byte[]> _cache;
+    private final int _maxEntryBytes;
+
+    // 请求过一次、尚未放入内存的文件
+    private final Set<String> _candidates = Collections.newSetFromMap(new LinkedHashMap<String, Boolean>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+            return size() > MAX_CANDIDATES;
+        }
+    });
+
+    private final AtomicLong _hits = new AtomicLong();
+    private final AtomicLong _misses = new AtomicLong();
+    private final AtomicLong _bytesServed = new AtomicLong();
+
+    /**
+     * 获取进程内共享的实例，预算根据设备的内存等级确定：每个应用可用堆内存的1/16
+     *
+     * @param context 上下文
+     * @return 内存缓存
+     */
+    public static synchronized HotAssetCache getInstance(Context context) {
+        if (__instance == null) {
+            ActivityManager am = (ActivityManager) context.getApplicationContext().getSystemService(Context.ACTIVITY_SERVICE);
+            int maxBytes = am.getMemoryClass() * 1024 * 1024 / 16;
+            __instance = new HotAssetCache(maxBytes);
+
+            Log.v(LOG_TAG, "Hot asset cache created with budget : " + maxBytes + " bytes");
+        }
+        return __instance;
+    }
+
+    /**
+     * 构造函数
+     *
+     * @param maxBytes 允许占用的最大字节数
+     */
+    public HotAssetCache(int maxBytes) {
+        _maxEntryBytes = maxBytes / MAX_ENTRY_FRACTION;
+        _cache = new LruCache<String, byte[]>(maxBytes) {
+            @Override
+            protected int sizeOf(String key, byte[] value) {
+                return value.length;
+            }
+        };
+    }
+
+    /**
+     * 从内存中获取文件，没有命中时通过opener读取
+     *
+     * @param key    文件的标识
+     * @param length 文件的长度（已解压），未知时为-1
+     * @param opener 从APK或磁盘打开文件
+     * @return 文件流，命中时为内存中数据的独立视图
+     */
+    public InputStream open(String key, long length, StreamOpener opener) throws IOException {
+
+        byte[] data = _cache.get(key);
+        if (data != null) {
+            _hits.incrementAndGet();
+            _bytesServed.addAndGet(data.length);
+            return new ByteArrayInputStream(data);
+        }
+
+        _misses.incrementAndGet();
+
+        // 长度未知或过大的文件，以及首次请求的文件，直接返回原始流
+        boolean admit;
+        if (length < 0 || length > _maxEntryBytes) {
+            admit = false;
+        } else {
+            synchronized (_candidates) {
+                admit = !_candidates.add(key);
+                if (admit) _candidates.remove(key);
+            }
+        }
+
+        if (!admit) return opener.open();
+
+        try (InputStream in = opener.open()) {
+            data = IOUtils.toByteArray(in);
+        }
+        _cache.put(key, data);
+        return new ByteArrayInputStream(data);
+    }
+
+    /**
+     * 获取命中次数
+     */
+    public long getHitCount() {
+        return _hits.get();
+    }
+
+    /**
+     * 获取未命中次数
+     */
+    public long getMissCount() {
+        return _misses.get();
+    }
+
+    /**
+     * 获取命中时从内存返回的字节数
+     */
+    public long getBytesServed() {
+        return _bytesServed.get();
+    }
+
+    /**
+     * 获取统计信息，用于日志
+     */
+    public String getStatistics() {
+        return "hits=" + getHitCount() + ", misses=" + getMissCount() + ", bytesServed=" + getBytesServed()
+                + ", size=" + _cache.size() + "/" + _cache.maxSize() + ", evictions=" + _cache.evictionCount();
+    }
+
+    /**
+     * 打开文件的方法
+     */
+    public interface StreamOpener {
+        InputStream open() throws IOException;
+    }
+}
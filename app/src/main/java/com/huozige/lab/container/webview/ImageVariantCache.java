@@ -0,0 +1,491 @@
+package com.huozige.lab.container.webview;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.net.Uri;
+import android.os.Build;
+import android.os.Process;
+import android.webkit.CookieManager;
+import android.webkit.WebResourceRequest;
+import android.webkit.WebResourceResponse;
+
+import com.alibaba.fastjson.JSONObject;
+import com.huozige.lab.container.utilities.DiskLruCache;
+import com.huozige.lab.container.utilities.HACLog;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.input.CountingInputStream;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 服务器上图片的缩小版本缓存，适用于页面中引用的活字格上传图片和资源图片，页面跳转和文件下载不处理
+ * 首次请求时代替浏览器下载原图，原图直接返回给浏览器，同时交给后台线程按屏幕宽度缩小并转为WebP后写入磁盘；此后直接返回缩小后的版本
+ * 缓存的键包括地址、目标宽度、用户范围（Cookie的摘要）和原图的校验信息（ETag、Last-Modified或内容摘要），不同用户、不同版本的图片不会混用
+ * 命中后每个进程向服务器校验一次，原图变化时重新生成
+ * 解码和编码在独立的低优先级线程中进行，不占用浏览器的IO线程
+ */
+public class ImageVariantCache {
+
+    static final String LOG_TAG = "HAC_ImageVariantCache";
+
+    /**
+     * 默认允许占用的最大字节数
+     */
+    public static final long DEFAULT_MAX_BYTES = 48L * 1024 * 1024;
+
+    static final int CONNECT_TIMEOUT = 15 * 1000;
+    static final int READ_TIMEOUT = 30 * 1000;
+
+    static final int WEBP_QUALITY = 80;
+
+    static final String KEY_PREFIX_VARIANT = "variant:";
+    static final String KEY_PREFIX_META = "meta:";
+
+    /**
+     * 原图超过这个大小时不处理，避免读取和解码时内存不足
+     * 分块传输的响应没有Content-Length，读取时超过这个大小同样中止
+     */
+    static final int MAX_SOURCE_BYTES = 20 * 1024 * 1024;
+
+    // 动图和矢量图不处理
+    private static final Set<String> IMAGE_EXTENSIONS = Collections.unmodifiableSet(new HashSet<>(Arrays.asList("jpg", "jpeg", "png", "bmp", "webp")));
+
+    // 所有实例共用一个处理线程，同一时刻只解码一张图片，控制内存峰值
+    private static final ExecutorService __encoder = Executors.newSingleThreadExecutor(runnable -> new Thread(() -> {
+        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+        runnable.run();
+    }, "HAC_ImageEncoder"));
+
+    private final DiskLruCache _store;
+    private final int _targetWidth;
+
+    // 正在处理或缩小后没有收益的图片（按缓存键的基础部分），本进程内不再处理
+    private final Set<String> _skipped = Collections.newSetFromMap(new ConcurrentHashMap<>());
+
+    // 本进程内已经向服务器校验过的图片
+    private final Set<String> _revalidated = Collections.newSetFromMap(new ConcurrentHashMap<>());
+
+    private final AtomicLong _hits = new AtomicLong();
+    private final AtomicLong _misses = new AtomicLong();
+    private final AtomicLong _updates = new AtomicLong(); // 校验时发现原图变化的次数
+    private final AtomicLong _bytesReduced = new AtomicLong(); // 缩小后相对原图减少的字节数
+
+    /**
+     * 缩小版本对应的原图的校验信息
+     */
+    public static class Meta {
+        public String ETag;
+        public String LastModified; // 服务器返回的原始值
+        public String Hash; // 原图的SHA-1，服务器没有返回校验信息时使用
+
+        /**
+         * 用于缓存键的校验信息，优先使用ETag
+         */
+        String getValidator() {
+            if (ETag != null) return ETag;
+            if (LastModified != null) return LastModified;
+            return Hash;
+        }
+    }
+
+    /**
+     * 构造函数
+     *
+     * @param directory   缓存目录，位于应用私有存储中
+     * @param maxBytes    允许占用的最大字节数
+     * @param targetWidth 缩小后的最大宽度（像素），通常为屏幕宽度
+     */
+    public ImageVariantCache(File directory, long maxBytes, int targetWidth) {
+        _store = DiskLruCache.open(directory, maxBytes);
+        _targetWidth = targetWidth;
+    }
+
+    /**
+     * 处理请求，只处理页面中加载的（非主框架、Accept包含image/）活字格上传和资源路径下的图片
+     * 未命中时在浏览器的IO线程中下载原图并返回，浏览器不再重复下载
+     *
+     * @param request 浏览器的请求
+     * @return 命中时返回缩小后的图片，未命中时返回原图，无法处理时返回空引用，由浏览器自行请求
+     */
+    public WebResourceResponse intercept(WebResourceRequest request) {
+
+        if (!"GET".equalsIgnoreCase(request.getMethod()) || request.isForMainFrame() || !acceptsImage(request.getRequestHeaders()) || !isForguncyImage(request.getUrl())) return null;
+
+        String url = request.getUrl().toString();
+        String cookie = CookieManager.getInstance().getCookie(url);
+        String baseKey = toBaseKey(url, cookie);
+
+        Meta meta = readMeta(baseKey);
+        File file = meta == null ? null : _store.get(toVariantKey(baseKey, meta));
+        if (file == null) {
+            _misses.incrementAndGet();
+            if (!_skipped.add(baseKey)) return null; // 正在处理或缩小后没有收益
+            return fetchSource(request, url, baseKey, cookie);
+        }
+
+        try {
+            InputStream data = new FileInputStream(file);
+            _hits.incrementAndGet();
+            if (_revalidated.add(baseKey)) __encoder.execute(() -> encode(url, baseKey, cookie, meta));
+
+            Map<String, String> headers = new HashMap<>();
+            headers.put("Cache-Control", "no-cache");
+            headers.put("Content-Length", String.valueOf(file.length()));
+            return new WebResourceResponse("image/webp", null, 200, "OK", headers, data);
+        } catch (IOException e) {
+            HACLog.e(LOG_TAG, "Error on loading image variant for : {} Error : {}", url, e);
+            return null;
+        }
+    }
+
+    /**
+     * 预取图片的缩小版本，在调用方的线程中同步执行
+     *
+     * @param url 图片地址
+     * @return 从网络下载的字节数（包括失败或缩小无效的情况），已有缓存或正在处理时为0，不处理的请求为-1
+     */
+    public long prefetch(Uri url) {
+
+        if (!isForguncyImage(url)) return -1;
+
+        String address = url.toString();
+        String cookie = CookieManager.getInstance().getCookie(address);
+        String baseKey = toBaseKey(address, cookie);
+        Meta meta = readMeta(baseKey);
+        if ((meta != null && _store.get(toVariantKey(baseKey, meta)) != null) || !_skipped.add(baseKey)) return 0;
+
+        return encode(address, baseKey, cookie, null);
+    }
+
+    /**
+     * 获取统计信息，用于日志
+     */
+    public String getStatistics() {
+        return "hits=" + _hits.get() + ", misses=" + _misses.get() + ", updates=" + _updates.get() + ", bytesReduced=" + _bytesReduced.get() + ", size=" + _store.size();
+    }
+
+    /**
+     * 判断是否为活字格上传的图片或资源中的图片，PATH形如：/app/Upload/xxx.jpg、/app/Resources/Images/xxx.png
+     * 下载接口（FileDownloadUpload/Download）用于用户下载原文件，不做处理
+     *
+     * @param url 请求地址
+     * @return 是否处理
+     */
+    static boolean isForguncyImage(Uri url) {
+
+        List<String> segments = url.getPathSegments();
+        boolean forguncyPath = false;
+        for (String segment : segments) {
+            if ("Upload".equalsIgnoreCase(segment) || "Resources".equals(segment)) {
+                forguncyPath = true;
+                break;
+            }
+        }
+        if (!forguncyPath) return false;
+
+        String name = url.getLastPathSegment();
+        if (name == null) return false;
+
+        int dot = name.lastIndexOf('.');
+        return dot >= 0 && IMAGE_EXTENSIONS.contains(name.substring(dot + 1).toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * 判断浏览器是否以图片的方式请求，如img标签和CSS背景；新窗口打开、下载等请求不处理
+     *
+     * @param headers 浏览器的请求头
+     * @return Accept中是否包含image/
+     */
+    static boolean acceptsImage(Map<String, String> headers) {
+        if (headers == null) return false;
+        for (Map.Entry<String, String> header : headers.entrySet()) {
+            if ("Accept".equalsIgnoreCase(header.getKey())) return header.getValue() != null && header.getValue().contains("image/");
+        }
+        return false;
+    }
+
+    /**
+     * 未命中时代替浏览器下载原图，原图返回给浏览器，同时交给处理线程缩小，避免浏览器和后台各下载一次
+     *
+     * @return 原图的响应，无法处理时返回空引用，由浏览器自行请求
+     */
+    private WebResourceResponse fetchSource(WebResourceRequest request, String url, String baseKey, String cookie) {
+
+        HttpURLConnection connection = null;
+        try {
+            connection = openConnection(url, cookie, null);
+            for (Map.Entry<String, String> header : request.getRequestHeaders().entrySet()) {
+                if (StaleWhileRevalidateCache.isForwardable(header.getKey())) connection.setRequestProperty(header.getKey(), header.getValue());
+            }
+
+            int code = connection.getResponseCode();
+            int length = connection.getContentLength();
+            if (code != HttpURLConnection.HTTP_OK || length > MAX_SOURCE_BYTES) {
+                HACLog.w(LOG_TAG, "Skip image variant for : {} , status : {} , length : {}", url, code, length);
+                return null;
+            }
+
+            byte[] source;
+            try (InputStream in = connection.getInputStream()) {
+                source = readSource(in);
+            }
+            if (source == null) {
+                HACLog.w(LOG_TAG, "Skip image variant for : {} , larger than {} bytes", url, MAX_SOURCE_BYTES);
+                return null; // 保留在_skipped中，本进程内由浏览器自行请求
+            }
+
+            Meta meta = toMeta(connection, source);
+            _revalidated.add(baseKey);
+            __encoder.execute(() -> store(url, baseKey, meta, source));
+
+            String contentType = connection.getContentType();
+            String mime = contentType == null ? "application/octet-stream" : contentType.split(";")[0].trim();
+
+            Map<String, String> headers = new HashMap<>();
+            headers.put("Cache-Control", "no-cache");
+            headers.put("Content-Length", String.valueOf(source.length));
+            if (meta.ETag != null) headers.put("ETag", meta.ETag);
+            if (meta.LastModified != null) headers.put("Last-Modified", meta.LastModified);
+            return new WebResourceResponse(mime, null, 200, "OK", headers, new ByteArrayInputStream(source));
+
+        } catch (IOException e) {
+            HACLog.e(LOG_TAG, "Error on loading image for : {} Error : {}", url, e);
+            _skipped.remove(baseKey);
+            return null;
+        } finally {
+            if (connection != null) connection.disconnect();
+        }
+    }
+
+    /**
+     * 下载原图，缩小并转为WebP后写入缓存；已有缓存时携带校验信息请求，原图没有变化时不再处理
+     *
+     * @param url      原图地址
+     * @param baseKey  缓存键的基础部分
+     * @param cookie   浏览器的Cookie
+     * @param previous 已缓存的版本的校验信息，没有时为空引用
+     * @return 从网络下载的原图字节数，无论是否写入缓存；用于预取时计算流量
+     */
+    private long encode(String url, String baseKey, String cookie, Meta previous) {
+
+        HttpURLConnection connection = null;
+        CountingInputStream in = null;
+        try {
+            connection = openConnection(url, cookie, previous);
+
+            int code = connection.getResponseCode();
+            if (code == HttpURLConnection.HTTP_NOT_MODIFIED) return 0;
+
+            int length = connection.getContentLength();
+            if (code != HttpURLConnection.HTTP_OK || length > MAX_SOURCE_BYTES) {
+                HACLog.w(LOG_TAG, "Skip image variant for : {} , status : {} , length : {}", url, code, length);
+                return 0;
+            }
+
+            byte[] source;
+            in = new CountingInputStream(connection.getInputStream());
+            try {
+                source = readSource(in);
+            } finally {
+                in.close();
+            }
+            if (source == null) {
+                HACLog.w(LOG_TAG, "Skip image variant for : {} , larger than {} bytes", url, MAX_SOURCE_BYTES);
+                return in.getByteCount();
+            }
+
+            Meta meta = toMeta(connection, source);
+            if (previous != null) {
+                if (meta.getValidator().equals(previous.getValidator())) return source.length; // 服务器不支持条件请求，但原图没有变化
+                _updates.incrementAndGet();
+                _store.remove(toVariantKey(baseKey, previous));
+            }
+            store(url, baseKey, meta, source);
+            return source.length;
+
+        } catch (IOException e) {
+            HACLog.e(LOG_TAG, "Error on encoding image variant for : {} Error : {}", url, e);
+            return in == null ? 0 : in.getByteCount(); // 下载中途失败时，已下载的部分同样计入流量
+        } finally {
+            if (connection != null) connection.disconnect();
+        }
+    }
+
+    /**
+     * 缩小原图并写入缓存，在处理线程中执行
+     */
+    private void store(String url, String baseKey, Meta meta, byte[] source) {
+        try {
+            byte[] variant = downscale(source, _targetWidth);
+            if (variant == null || variant.length >= source.length) {
+                HACLog.v(LOG_TAG, "Image variant is not smaller, skipped : {}", url);
+                return;
+            }
+
+            if (_store.put(toVariantKey(baseKey, meta), new ByteArrayInputStream(variant)) != null) {
+                _store.put(KEY_PREFIX_META + baseKey, new ByteArrayInputStream(JSONObject.toJSONString(meta).getBytes(StandardCharsets.UTF_8)));
+                _bytesReduced.addAndGet(source.length - variant.length);
+                _skipped.remove(baseKey);
+                if (HACLog.isVerbose(LOG_TAG)) {
+                    HACLog.v(LOG_TAG, "Image variant stored for : {} , {} -> {} bytes", url, source.length, variant.length);
+                }
+            }
+        } catch (IOException | OutOfMemoryError e) {
+            HACLog.e(LOG_TAG, "Error on encoding image variant for : {} Error : {}", url, e);
+        }
+    }
+
+    /**
+     * 读取原图，超过MAX_SOURCE_BYTES时立即中止，不再继续下载
+     *
+     * @param in 响应的数据流
+     * @return 原图，超过大小限制时返回空引用
+     */
+    static byte[] readSource(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            if (out.size() + read > MAX_SOURCE_BYTES) return null;
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * 打开到服务器的连接，有已缓存的版本时携带校验信息
+     */
+    private static HttpURLConnection openConnection(String url, String cookie, Meta previous) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        connection.setConnectTimeout(CONNECT_TIMEOUT);
+        connection.setReadTimeout(READ_TIMEOUT);
+        if (cookie != null) connection.setRequestProperty("Cookie", cookie);
+        if (previous != null) {
+            if (previous.ETag != null) connection.setRequestProperty("If-None-Match", previous.ETag);
+            if (previous.LastModified != null) connection.setRequestProperty("If-Modified-Since", previous.LastModified);
+        }
+        return connection;
+    }
+
+    /**
+     * 从响应中读取原图的校验信息
+     */
+    private static Meta toMeta(HttpURLConnection connection, byte[] source) {
+        Meta meta = new Meta();
+        meta.ETag = connection.getHeaderField("ETag");
+        meta.LastModified = connection.getHeaderField("Last-Modified");
+        meta.Hash = sha1(source);
+        return meta;
+    }
+
+    /**
+     * 读取缓存的校验信息
+     */
+    private Meta readMeta(String baseKey) {
+        File file = _store.get(KEY_PREFIX_META + baseKey);
+        if (file == null) return null;
+        try {
+            return JSONObject.parseObject(FileUtils.readFileToString(file, StandardCharsets.UTF_8), Meta.class);
+        } catch (IOException | RuntimeException e) {
+            HACLog.e(LOG_TAG, "Error on reading image variant meta for : {} Error : {}", baseKey, e);
+            return null;
+        }
+    }
+
+    /**
+     * 缓存键的基础部分：地址、目标宽度和用户范围（Cookie的摘要，不保存Cookie本身）
+     */
+    private String toBaseKey(String url, String cookie) {
+        return url + "@" + _targetWidth + "#" + (cookie == null ? "" : sha1(cookie.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * 缩小版本的缓存键，包括原图的校验信息
+     */
+    private static String toVariantKey(String baseKey, Meta meta) {
+        return KEY_PREFIX_VARIANT + baseKey + "#" + meta.getValidator();
+    }
+
+    private static String sha1(byte[] data) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(data);
+            StringBuilder sb = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                sb.append(Character.forDigit((b >> 4) & 0xF, 16));
+                sb.append(Character.forDigit(b & 0xF, 16));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * 按目标宽度缩小图片并编码为WebP
+     *
+     * @param source      原图
+     * @param targetWidth 最大宽度（像素）
+     * @return WebP数据，无法解码时返回空引用
+     */
+    @SuppressWarnings("deprecation")
+    static byte[] downscale(byte[] source, int targetWidth) {
+
+        // 先读取尺寸，计算采样率，避免解码完整的原图
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeByteArray(source, 0, source.length, options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) return null;
+
+        int sampleSize = 1;
+        while (options.outWidth / (sampleSize * 2) >= targetWidth) {
+            sampleSize *= 2;
+        }
+
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = sampleSize;
+        Bitmap bitmap = BitmapFactory.decodeByteArray(source, 0, source.length, options);
+        if (bitmap == null) return null;
+
+        try {
+            // 采样后依然过宽时，精确缩放到目标宽度
+            if (bitmap.getWidth() > targetWidth) {
+                int height = Math.max(1, (int) ((long) bitmap.getHeight() * targetWidth / bitmap.getWidth()));
+                Bitmap scaled = Bitmap.createScaledBitmap(bitmap, targetWidth, height, true);
+                if (scaled != bitmap) {
+                    bitmap.recycle();
+                    bitmap = scaled;
+                }
+            }
+
+            Bitmap.CompressFormat format = Build.VERSION.SDK_INT >= Build.VERSION_CODES.R ? Bitmap.CompressFormat.WEBP_LOSSY : Bitmap.CompressFormat.WEBP;
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            if (!bitmap.compress(format, WEBP_QUALITY, out)) return null;
+            return out.toByteArray();
+        } finally {
+            bitmap.recycle();
+        }
+    }
+}
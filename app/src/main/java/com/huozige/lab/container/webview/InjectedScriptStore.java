@@ -0,0 +1,207 @@
+package com.huozige.lab.container.webview;
+
+import android.content.res.AssetManager;
+import android.os.SystemClock;
+import android.util.Log;
+
+import org.apache.commons.io.IOUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+
+/**
+ * 进程内共享的注入脚本仓库
+ * 应用启动时在后台加载并校验Assets下hac_inject目录中的全部脚本，此后以不可变字符串的形式复用，Activity重建时无需再次读取
+ * 目录结构为：hac_inject/平台名称/*.js，common目录下的脚本适用于所有平台；同一目录下的脚本按文件名顺序拼接
+ */
+public class InjectedScriptStore {
+
+    static final String LOG_TAG = "HAC_InjectedScriptStore";
+
+    /**
+     * 脚本在Assets下的根目录
+     */
+    public static final String ROOT = "hac_inject";
+
+    /**
+     * 适用于所有平台的脚本目录
+     */
+    public static final String PLATFORM_COMMON = "common";
+
+    /**
+     * 同步获取脚本时等待后台加载完成的最长时间；UI线程应使用getScriptAsync，不等待
+     */
+    static final long LOAD_TIMEOUT_MILLIS = 2000;
+
+    private static InjectedScriptStore __instance;
+
+    private final CompletableFuture<Map<String, List<String>>> _scripts; // 平台名称 -> 脚本
+    private final Map<String, String> _combined = new HashMap<>(); // 平台名称 -> 拼接后的脚本
+
+    /**
+     * 在后台开始加载脚本，应在应用启动时调用
+     *
+     * @param assets 存放脚本的Assets
+     */
+    public static synchronized void preload(AssetManager assets) {
+        if (__instance == null) {
+            __instance = new InjectedScriptStore(assets);
+        }
+    }
+
+    /**
+     * 获取进程内共享的实例
+     *
+     * @param assets 存放脚本的Assets，尚未调用preload时使用
+     * @return 脚本仓库
+     */
+    public static synchronized InjectedScriptStore getInstance(AssetManager assets) {
+        preload(assets);
+        return __instance;
+    }
+
+    private InjectedScriptStore(AssetManager assets) {
+        ExecutorService loader = Executors.newSingleThreadExecutor();
+        _scripts = CompletableFuture.supplyAsync(() -> {
+            try {
+                return loadAll(assets);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, loader);
+        loader.shutdown();
+    }
+
+    /**
+     * 异步获取指定平台需要注入的脚本，不阻塞调用线程，用于Activity的onCreate等UI线程中的调用
+     * 已加载完成时立即在调用线程中回调，否则在加载完成后于后台线程中回调；加载失败时回调空字符串
+     *
+     * @param platform 平台名称，如：hzg
+     * @param callback 收到拼接后的脚本后的回调
+     */
+    public void getScriptAsync(String platform, Consumer<String> callback) {
+        _scripts.whenComplete((scripts, error) -> callback.accept(getScript(platform)));
+    }
+
+    /**
+     * 获取指定平台需要注入的脚本，包括通用脚本，每个脚本独立捕获异常，互不影响
+     * 尚未加载完成时最多等待LOAD_TIMEOUT_MILLIS，不要在UI线程中调用
+     *
+     * @param platform 平台名称，如：hzg
+     * @return 拼接后的脚本，没有脚本时为空字符串
+     */
+    public synchronized String getScript(String platform) {
+
+        String combined = _combined.get(platform);
+        if (combined != null) return combined;
+
+        List<String> scripts = new ArrayList<>(getScripts(PLATFORM_COMMON));
+        if (!PLATFORM_COMMON.equals(platform)) scripts.addAll(getScripts(platform));
+
+        StringBuilder sb = new StringBuilder();
+        for (String script : scripts) {
+            sb.append("try{\n").append(script).append("\n}catch(e){console.error('HAC injected script failed : ' + e);}\n");
+        }
+        combined = sb.toString();
+        if (_scripts.isDone()) _combined.put(platform, combined); // 等待超时的结果不予缓存
+        return combined;
+    }
+
+    /**
+     * 获取指定平台目录下的脚本，不包括通用脚本
+     *
+     * @param platform 平台名称
+     * @return 按文件名排列的只读列表
+     */
+    public List<String> getScripts(String platform) {
+        try {
+            List<String> scripts = _scripts.get(LOAD_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS).get(platform);
+            return scripts == null ? Collections.emptyList() : scripts;
+        } catch (ExecutionException | TimeoutException e) {
+            Log.e(LOG_TAG, "Error on loading injected scripts : " + e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return Collections.emptyList();
+    }
+
+    /**
+     * 加载全部平台的脚本
+     */
+    static Map<String, List<String>> loadAll(AssetManager assets) throws IOException {
+
+        long start = SystemClock.elapsedRealtime();
+        Map<String, List<String>> result = new HashMap<>();
+
+        String[] platforms = assets.list(ROOT);
+        if (platforms == null) return result;
+
+        int count = 0;
+        for (String platform : platforms) {
+            String[] files = assets.list(ROOT + "/" + platform);
+            if (files == null) continue;
+            Arrays.sort(files);
+
+            List<String> scripts = new ArrayList<>();
+            for (String file : files) {
+                if (!file.endsWith(".js")) continue;
+                String script = load(assets, ROOT + "/" + platform + "/" + file);
+                if (script != null) scripts.add(script);
+            }
+            result.put(platform, Collections.unmodifiableList(scripts));
+            count += scripts.size();
+        }
+
+        Log.v(LOG_TAG, "Injected scripts loaded : " + count + " scripts in " + (SystemClock.elapsedRealtime() - start) + "ms");
+
+        return Collections.unmodifiableMap(result);
+    }
+
+    /**
+     * 加载并校验单个脚本：必须是有效的UTF-8且不为空，去掉开头的BOM
+     *
+     * @param assets 存放脚本的Assets
+     * @param path   脚本在Assets下的路径
+     * @return 脚本内容，校验失败时返回空引用
+     */
+    static String load(AssetManager assets, String path) {
+        try (InputStream in = assets.open(path)) {
+            String script = StandardCharsets.UTF_8.newDecoder()
+                    .onMalformedInput(CodingErrorAction.REPORT)
+                    .onUnmappableCharacter(CodingErrorAction.REPORT)
+                    .decode(ByteBuffer.wrap(IOUtils.toByteArray(in)))
+                    .toString();
+
+            if (script.startsWith("\uFEFF")) script = script.substring(1);
+            if (script.trim().isEmpty()) {
+                Log.w(LOG_TAG, "Empty injected script skipped : " + path);
+                return null;
+            }
+            return script;
+        } catch (CharacterCodingException e) {
+            Log.e(LOG_TAG, "Invalid injected script skipped : " + path + " Error : " + e);
+            return null;
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Error on loading injected script : " + path + " Error : " + e);
+            return null;
+        }
+    }
+}
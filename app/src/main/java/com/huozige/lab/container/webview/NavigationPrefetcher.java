@@ -0,0 +1,303 @@
+package com.huozige.lab.container.webview;
+
+import android.net.ConnectivityManager;
+import android.net.Uri;
+import android.os.Process;
+
+import com.alibaba.fastjson.JSONObject;
+import com.huozige.lab.container.utilities.HACLog;
+
+import org.apache.commons.io.FileUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 基于页面跳转历史的预取
+ * 以一阶马尔可夫模型记录页面之间的跳转次数，同时记录每个页面加载过的资源；
+ * 页面加载完成后，预测最可能访问的下一个页面，在低优先级的线程中将其资源预先放入请求缓存和图片缓存
+ * 模型以JSON格式保存在应用私有存储中，预测的准确率和预取的命中情况记录在统计信息中
+ */
+public class NavigationPrefetcher {
+
+    static final String LOG_TAG = "HAC_NavigationPrefetcher";
+
+    /**
+     * 单次预取的字节数上限
+     */
+    public static final long DEFAULT_BUDGET_BYTES = 2L * 1024 * 1024;
+
+    static final int MAX_PAGES = 200; // 模型中页面数量的上限
+    static final int MAX_RESOURCES_PER_PAGE = 32; // 每个页面记录的资源数量上限
+    static final int MAX_PREDICTIONS = 2; // 每次预取的页面数量上限
+    static final double MIN_PROBABILITY = 0.3; // 低于这个概率的页面不预取
+
+    // 所有实例共用一个最低优先级的线程，预取和保存模型都在这里执行
+    private static final ExecutorService __worker = Executors.newSingleThreadExecutor(runnable -> new Thread(() -> {
+        Process.setThreadPriority(Process.THREAD_PRIORITY_LOWEST);
+        runnable.run();
+    }, "HAC_Prefetcher"));
+
+    /**
+     * 持久化的模型，需要公开供序列化使用
+     */
+    public static class Model {
+        public Map<String, Map<String, Integer>> Transitions = new HashMap<>(); // 页面 -> (下一个页面 -> 次数)
+        public Map<String, List<String>> Resources = new HashMap<>(); // 页面 -> 资源地址
+    }
+
+    private final File _modelFile;
+    private final long _budgetBytes;
+    private final ConnectivityManager _connectivity;
+    private final StaleWhileRevalidateCache _responseCache;
+    private final ImageVariantCache _imageCache;
+
+    private Model _model; // 只在工作线程中访问
+
+    private volatile String _currentPage;
+    private final Set<String> _currentResources = ConcurrentHashMap.newKeySet(); // 当前页面加载过的资源
+    private volatile Set<String> _predictedPages = new HashSet<>(); // 上一次预测的页面
+    private final Set<String> _prefetchedUrls = ConcurrentHashMap.newKeySet(); // 预取过、尚未被使用的资源
+
+    private final AtomicLong _predictions = new AtomicLong(); // 做出预测的跳转次数
+    private final AtomicLong _correctPredictions = new AtomicLong(); // 预测正确的跳转次数
+    private final AtomicLong _prefetchedBytes = new AtomicLong();
+    private final AtomicLong _prefetchedCount = new AtomicLong();
+    private final AtomicLong _usedCount = new AtomicLong(); // 预取后被页面使用的资源数
+
+    /**
+     * 构造函数
+     *
+     * @param modelFile     模型文件，位于应用私有存储中
+     * @param budgetBytes   单次预取的字节数上限
+     * @param connectivity  用于判断当前网络是否按流量计费
+     * @param responseCache 请求缓存，可以为空
+     * @param imageCache    图片缓存，可以为空
+     */
+    public NavigationPrefetcher(File modelFile, long budgetBytes, ConnectivityManager connectivity, StaleWhileRevalidateCache responseCache, ImageVariantCache imageCache) {
+        _modelFile = modelFile;
+        _budgetBytes = budgetBytes;
+        _connectivity = connectivity;
+        _responseCache = responseCache;
+        _imageCache = imageCache;
+    }
+
+    /**
+     * 页面跳转时调用，记录跳转关系
+     *
+     * @param url 新页面的地址
+     */
+    public void onNavigated(String url) {
+
+        String page = normalize(url);
+        if (page == null || page.equals(_currentPage)) return;
+
+        String previous = _currentPage;
+        List<String> resources = new ArrayList<>(_currentResources);
+        _currentResources.clear();
+        _currentPage = page;
+
+        // 评估上一次预测
+        Set<String> predicted = _predictedPages;
+        if (!predicted.isEmpty()) {
+            _predictions.incrementAndGet();
+            if (predicted.contains(page)) _correctPredictions.incrementAndGet();
+            _predictedPages = new HashSet<>();
+        }
+
+        __worker.execute(() -> {
+            Model model = getModel();
+            if (previous != null) {
+                recordResources(model, previous, resources);
+                Map<String, Integer> next = model.Transitions.get(previous);
+                if (next == null) {
+                    if (model.Transitions.size() >= MAX_PAGES) return;
+                    next = new HashMap<>();
+                    model.Transitions.put(previous, next);
+                }
+                Integer count = next.get(page);
+                next.put(page, count == null ? 1 : count + 1);
+            }
+        });
+    }
+
+    /**
+     * 浏览器请求资源时调用，记录当前页面使用的资源
+     *
+     * @param url 资源地址
+     */
+    public void onResourceRequested(Uri url) {
+        String address = url.toString();
+        if (_prefetchedUrls.remove(address)) _usedCount.incrementAndGet();
+        if (_currentPage != null && _currentResources.size() < MAX_RESOURCES_PER_PAGE) _currentResources.add(address);
+    }
+
+    /**
+     * 页面加载完成后调用，预取最可能访问的下一个页面的资源，并保存模型
+     *
+     * @param url 页面地址
+     */
+    public void onPageFinished(String url) {
+
+        String page = normalize(url);
+        if (page == null) return;
+
+        List<String> resources = new ArrayList<>(_currentResources);
+
+        __worker.execute(() -> {
+            Model model = getModel();
+            recordResources(model, page, resources);
+            saveModel(model);
+
+            // 按流量计费的网络不预取
+            if (_connectivity != null && _connectivity.isActiveNetworkMetered()) return;
+
+            List<String> predicted = predict(model, page);
+            _predictedPages = new HashSet<>(predicted);
+            prefetch(model, predicted);
+        });
+    }
+
+    /**
+     * 获取统计信息，用于日志
+     */
+    public String getStatistics() {
+        long predictions = _predictions.get();
+        long prefetched = _prefetchedCount.get();
+        return "predictions=" + predictions
+                + ", accuracy=" + (predictions == 0 ? 0 : _correctPredictions.get() * 100 / predictions) + "%"
+                + ", prefetched=" + prefetched + " (" + _prefetchedBytes.get() + " bytes)"
+                + ", used=" + (prefetched == 0 ? 0 : _usedCount.get() * 100 / prefetched) + "%";
+    }
+
+    /**
+     * 预测下一个页面
+     *
+     * @param model 模型
+     * @param page  当前页面
+     * @return 按概率从高到低排列的页面
+     */
+    static List<String> predict(Model model, String page) {
+
+        List<String> result = new ArrayList<>();
+        Map<String, Integer> next = model.Transitions.get(page);
+        if (next == null || next.isEmpty()) return result;
+
+        int total = 0;
+        for (int count : next.values()) total += count;
+
+        List<Map.Entry<String, Integer>> candidates = new ArrayList<>(next.entrySet());
+        candidates.sort((a, b) -> Integer.compare(b.getValue(), a.getValue()));
+        for (Map.Entry<String, Integer> candidate : candidates) {
+            if (result.size() >= MAX_PREDICTIONS || (double) candidate.getValue() / total < MIN_PROBABILITY) break;
+            result.add(candidate.getKey());
+        }
+        return result;
+    }
+
+    /**
+     * 预取页面的资源，直到超出字节数上限
+     * 按实际从网络下载的字节数计算，下载后没有写入缓存或下载中途失败的请求同样计入
+     */
+    private void prefetch(Model model, List<String> pages) {
+
+        long spent = 0;
+        for (String page : pages) {
+            List<String> resources = model.Resources.get(page);
+            if (resources == null) continue;
+
+            for (String address : resources) {
+                if (spent >= _budgetBytes) {
+                    HACLog.v(LOG_TAG, "Prefetch budget exhausted : {} bytes", spent);
+                    return;
+                }
+
+                long bytes = -1;
+                if (_responseCache != null) bytes = _responseCache.prefetch(address);
+                if (bytes < 0 && _imageCache != null) bytes = _imageCache.prefetch(Uri.parse(address));
+
+                if (bytes > 0) {
+                    spent += bytes;
+                    _prefetchedBytes.addAndGet(bytes);
+                    _prefetchedCount.incrementAndGet();
+                    _prefetchedUrls.add(address);
+                }
+            }
+        }
+
+        if (spent > 0) HACLog.v(LOG_TAG, "Prefetched {} bytes for : {}", spent, pages);
+    }
+
+    /**
+     * 合并页面使用的资源，最近使用的排在前面
+     */
+    private static void recordResources(Model model, String page, List<String> resources) {
+        if (resources.isEmpty()) return;
+
+        List<String> existing = model.Resources.get(page);
+        if (existing == null && model.Resources.size() >= MAX_PAGES) return;
+
+        Set<String> merged = new LinkedHashSet<>(resources);
+        if (existing != null) merged.addAll(existing);
+
+        List<String> result = new ArrayList<>(merged);
+        model.Resources.put(page, result.size() > MAX_RESOURCES_PER_PAGE ? new ArrayList<>(result.subList(0, MAX_RESOURCES_PER_PAGE)) : result);
+    }
+
+    /**
+     * 获取模型，首次调用时从文件加载
+     */
+    private Model getModel() {
+        if (_model == null) {
+            try {
+                if (_modelFile.exists()) {
+                    _model = JSONObject.parseObject(FileUtils.readFileToString(_modelFile, StandardCharsets.UTF_8), Model.class);
+                }
+            } catch (IOException | RuntimeException e) {
+                HACLog.e(LOG_TAG, "Error on loading navigation model : {}", e);
+            }
+            if (_model == null) _model = new Model();
+        }
+        return _model;
+    }
+
+    /**
+     * 保存模型
+     */
+    private void saveModel(Model model) {
+        try {
+            FileUtils.writeStringToFile(_modelFile, JSONObject.toJSONString(model), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            HACLog.e(LOG_TAG, "Error on saving navigation model : {}", e);
+        }
+    }
+
+    /**
+     * 页面的标识：去掉参数，保留锚点（单页应用的路由）
+     *
+     * @param url 页面地址
+     * @return 页面的标识，不是HTTP或HTTPS页面时返回空引用
+     */
+    static String normalize(String url) {
+        if (url == null) return null;
+
+        Uri uri = Uri.parse(url);
+        String scheme = uri.getScheme();
+        if (!"http".equalsIgnoreCase(scheme) && !"https".equalsIgnoreCase(scheme)) return null;
+
+        String page = scheme + "://" + uri.getEncodedAuthority() + uri.getEncodedPath();
+        return uri.getEncodedFragment() == null ? page : page + "#" + uri.getEncodedFragment();
+    }
+}
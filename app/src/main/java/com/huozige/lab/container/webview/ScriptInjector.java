@@ -0,0 +1,252 @@
+package com.huozige.lab.container.webview;
+
+import android.util.Log;
+import android.webkit.CookieManager;
+import android.webkit.WebResourceRequest;
+import android.webkit.WebResourceResponse;
+import android.webkit.WebView;
+
+import androidx.webkit.WebViewCompat;
+import androidx.webkit.WebViewFeature;
+
+import org.apache.commons.io.IOUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 辅助脚本的注入引擎，保证每个文档（包括iframe）在页面脚本执行前注入且仅注入一次
+ * WebView支持DOCUMENT_START_SCRIPT时，将脚本注册为文档起始脚本，由浏览器内核在每个文档创建时执行，无需逐个请求处理；
+ * 否则在拦截HTML文档时，将脚本以script标签的形式插入到head中
+ * 脚本外层包裹了全局标记的检查，即使同一文档被多次注入，也只会执行一次
+ */
+public class ScriptInjector {
+
+    static final String LOG_TAG = "HAC_ScriptInjector";
+
+    static final int CONNECT_TIMEOUT = 15 * 1000;
+    static final int READ_TIMEOUT = 30 * 1000;
+
+    /**
+     * 所有来源的文档都注入
+     */
+    static final Set<String> ALLOWED_ORIGINS = Collections.singleton("*");
+
+    /**
+     * 文档中已经注入过的标记
+     */
+    static final String INJECTED_FLAG = "__HAC_INJECTED__";
+
+    private final String _script; // 包裹了注入标记检查的脚本
+    private final String _scriptTag; // 用于插入HTML的script标签
+    private final AtomicBoolean _installed = new AtomicBoolean(false);
+    private volatile boolean _documentStartSupported = false;
+
+    /**
+     * 构造函数
+     *
+     * @param script 需要注入的脚本，为空意味着不注入
+     */
+    public ScriptInjector(String script) {
+        if (script == null || script.isEmpty()) {
+            _script = null;
+            _scriptTag = null;
+        } else {
+            _script = "if(!window." + INJECTED_FLAG + "){window." + INJECTED_FLAG + "=true;\n" + script + "\n}";
+            _scriptTag = "<script>" + _script.replace("</script", "<\\/script") + "</script>";
+        }
+    }
+
+    /**
+     * 将脚本注册为文档起始脚本，只需要在WebView创建后调用一次，必须在UI线程中调用
+     *
+     * @param webView 浏览器
+     */
+    public void install(WebView webView) {
+        if (_script == null || !_installed.compareAndSet(false, true)) return;
+
+        if (WebViewFeature.isFeatureSupported(WebViewFeature.DOCUMENT_START_SCRIPT)) {
+            WebViewCompat.addDocumentStartJavaScript(webView, _script, ALLOWED_ORIGINS);
+            _documentStartSupported = true;
+            Log.v(LOG_TAG, "Helper script registered as document start script");
+        } else {
+            Log.w(LOG_TAG, "Document start script is not supported, helper script will be spliced into HTML documents");
+        }
+    }
+
+    /**
+     * 在浏览器当前的文档中执行脚本，用于注册晚于文档加载的情况，已经注入过的文档不会重复执行
+     *
+     * @param webView 浏览器
+     */
+    public void inject(WebView webView) {
+        if (_script != null) webView.evaluateJavascript(_script, null);
+    }
+
+    /**
+     * 是否需要在拦截时处理HTML文档
+     */
+    public boolean isSplicingRequired() {
+        return _script != null && !_documentStartSupported;
+    }
+
+    /**
+     * 拦截HTML文档的请求，从服务器获取后插入脚本，仅在不支持文档起始脚本时生效
+     *
+     * @param request 浏览器的请求
+     * @return 插入脚本后的文档；不是成功的HTML文档时原样返回服务器的响应；重定向、需要认证或获取失败时返回空引用，由浏览器自行请求
+     */
+    public WebResourceResponse intercept(WebResourceRequest request) {
+
+        if (!isSplicingRequired() || !"GET".equalsIgnoreCase(request.getMethod()) || !isDocumentRequest(request)) return null;
+
+        String url = request.getUrl().toString();
+        HttpURLConnection connection = null;
+        try {
+            connection = (HttpURLConnection) new URL(url).openConnection();
+            connection.setConnectTimeout(CONNECT_TIMEOUT);
+            connection.setReadTimeout(READ_TIMEOUT);
+            connection.setInstanceFollowRedirects(false); // 重定向需要由浏览器处理，才能正确解析相对地址
+
+            for (Map.Entry<String, String> header : request.getRequestHeaders().entrySet()) {
+                if (!"Accept-Encoding".equalsIgnoreCase(header.getKey())) connection.setRequestProperty(header.getKey(), header.getValue());
+            }
+            String cookie = CookieManager.getInstance().getCookie(url);
+            if (cookie != null) connection.setRequestProperty("Cookie", cookie);
+
+            int code = connection.getResponseCode();
+            String contentType = connection.getContentType();
+
+            // 服务器设置的Cookie需要同步给浏览器
+            List<String> setCookies = connection.getHeaderFields().get("Set-Cookie");
+            if (setCookies != null) {
+                for (String setCookie : setCookies) {
+                    CookieManager.getInstance().setCookie(url, setCookie);
+                }
+            }
+
+            // WebResourceResponse不支持重定向的状态码
+            if (code >= 300 && code < 400) return null;
+
+            // 需要认证时交给浏览器重新请求，才能触发onReceivedHttpAuthRequest
+            if (code == HttpURLConnection.HTTP_UNAUTHORIZED || code == HttpURLConnection.HTTP_PROXY_AUTH) return null;
+
+            // 请求已经发出，其他响应原样返回，避免浏览器再请求一次
+            if (code != HttpURLConnection.HTTP_OK || contentType == null || !contentType.toLowerCase(Locale.ROOT).startsWith("text/html")) {
+                WebResourceResponse response = toResponse(connection, code, contentType);
+                connection = null; // 由响应的数据流在关闭时断开连接
+                return response;
+            }
+
+            StaleWhileRevalidateCache.Meta meta = new StaleWhileRevalidateCache.Meta();
+            StaleWhileRevalidateCache.parseContentType(contentType, meta);
+
+            String html;
+            try (InputStream in = connection.getInputStream()) {
+                html = IOUtils.toString(in, Charset.forName(meta.Encoding));
+            }
+
+            Map<String, String> headers = new HashMap<>();
+            headers.put("Cache-Control", "no-cache");
+            return new WebResourceResponse(meta.MIME, meta.Encoding, 200, "OK", headers, new ByteArrayInputStream(insertScriptTag(html).getBytes(Charset.forName(meta.Encoding))));
+
+        } catch (IOException | RuntimeException e) {
+            Log.e(LOG_TAG, "Error on splicing helper script for : " + url + " Error : " + e);
+            return null;
+        } finally {
+            if (connection != null) connection.disconnect();
+        }
+    }
+
+    /**
+     * 将服务器的响应原样转换为浏览器的响应，数据流关闭时断开连接
+     */
+    private static WebResourceResponse toResponse(HttpURLConnection connection, int code, String contentType) throws IOException {
+
+        StaleWhileRevalidateCache.Meta meta = new StaleWhileRevalidateCache.Meta();
+        StaleWhileRevalidateCache.parseContentType(contentType, meta);
+        String encoding = contentType != null && contentType.toLowerCase(Locale.ROOT).contains("charset=") ? meta.Encoding : null;
+
+        Map<String, String> headers = new HashMap<>();
+        for (Map.Entry<String, List<String>> field : connection.getHeaderFields().entrySet()) {
+            if (field.getKey() == null || field.getValue() == null || "Set-Cookie".equalsIgnoreCase(field.getKey())) continue; // 状态行和已同步的Cookie
+            headers.put(field.getKey(), String.join(", ", field.getValue()));
+        }
+
+        InputStream body = code >= HttpURLConnection.HTTP_BAD_REQUEST ? connection.getErrorStream() : connection.getInputStream();
+        if (body == null) body = new ByteArrayInputStream(new byte[0]);
+        InputStream data = new FilterInputStream(body) {
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    connection.disconnect();
+                }
+            }
+        };
+
+        String reason = connection.getResponseMessage();
+        if (reason == null || reason.trim().isEmpty()) reason = String.valueOf(code); // 原因短语不能为空
+        return new WebResourceResponse(meta.MIME, encoding, code, reason, headers, data);
+    }
+
+    /**
+     * 为本地缓存返回的HTML文档插入脚本，仅在不支持文档起始脚本时生效
+     *
+     * @param response 本地缓存返回的响应
+     * @return 插入脚本后的响应，不是HTML文档时原样返回
+     */
+    public WebResourceResponse splice(WebResourceResponse response) {
+
+        if (!isSplicingRequired() || response == null || response.getMimeType() == null || !response.getMimeType().toLowerCase(Locale.ROOT).startsWith("text/html")) {
+            return response;
+        }
+
+        Charset charset = Charset.forName(response.getEncoding() == null ? "UTF-8" : response.getEncoding());
+        try (InputStream in = response.getData()) {
+            String html = insertScriptTag(IOUtils.toString(in, charset));
+            Map<String, String> headers = new HashMap<>();
+            if (response.getResponseHeaders() != null) headers.putAll(response.getResponseHeaders());
+            headers.remove("Content-Length");
+            response.setResponseHeaders(headers);
+            response.setData(new ByteArrayInputStream(html.getBytes(charset)));
+            return response;
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Error on splicing helper script : " + e);
+            return null;
+        }
+    }
+
+    /**
+     * 将脚本插入到head的开头，没有head时插入到文档开头
+     */
+    String insertScriptTag(String html) {
+        String lower = html.toLowerCase(Locale.ROOT);
+        int head = lower.indexOf("<head");
+        int position = head < 0 ? -1 : lower.indexOf('>', head);
+        if (position < 0) return _scriptTag + html;
+        return html.substring(0, position + 1) + _scriptTag + html.substring(position + 1);
+    }
+
+    /**
+     * 是否为HTML文档（页面或iframe）的请求
+     */
+    static boolean isDocumentRequest(WebResourceRequest request) {
+        if (request.isForMainFrame()) return true;
+        String accept = CachedResponseFactory.getHeader(request.getRequestHeaders(), "Accept");
+        return accept != null && accept.startsWith("text/html");
+    }
+}
@@ -0,0 +1,481 @@
+package com.huozige.lab.container.webview;
+
+import android.os.Process;
+import android.os.SystemClock;
+import android.webkit.CookieManager;
+import android.webkit.WebResourceRequest;
+import android.webkit.WebResourceResponse;
+
+import com.alibaba.fastjson.JSONObject;
+import com.huozige.lab.container.utilities.DiskLruCache;
+import com.huozige.lab.container.utilities.HACLog;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.input.CountingInputStream;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * 页面定义、元数据等GET请求的磁盘缓存，采用stale-while-revalidate策略
+ * 只处理白名单（正则表达式，匹配完整的URL）中的请求：命中时立即返回本地内容，同时在后台携带ETag或Last-Modified向服务器校验，
+ * 内容变化时更新缓存，供下次使用；未命中时由浏览器自行请求，同时在后台获取一份放入缓存
+ * 服务器的版本标识（如活字格版本号）变化后，全部缓存作废
+ * 缓存按Cookie区分用户和会话，携带Authorization的请求和Cache-Control为private或no-store的响应不缓存
+ */
+public class StaleWhileRevalidateCache {
+
+    static final String LOG_TAG = "HAC_SWRCache";
+
+    /**
+     * 默认允许占用的最大字节数
+     */
+    public static final long DEFAULT_MAX_BYTES = 32L * 1024 * 1024;
+
+    static final int CONNECT_TIMEOUT = 15 * 1000;
+    static final int READ_TIMEOUT = 30 * 1000;
+
+    static final String KEY_PREFIX_BODY = "body:";
+    static final String KEY_PREFIX_META = "meta:";
+    static final String STAMP_SUFFIX = ".stamp";
+
+    // 后台校验的线程，使用较低的优先级，避免与页面加载争抢资源
+    private static final ExecutorService __revalidator = Executors.newFixedThreadPool(2, runnable -> new Thread(() -> {
+        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+        runnable.run();
+    }, "HAC_SWRRevalidator"));
+
+    private final DiskLruCache _store;
+    private final File _stampFile;
+    private final List<Pattern> _patterns;
+    private final PatternStatistics[] _statistics;
+
+    // 正在后台获取的缓存键，避免重复请求
+    private final Set<String> _inFlight = Collections.newSetFromMap(new ConcurrentHashMap<>());
+
+    private volatile String _stamp; // 当前的版本标识
+
+    private volatile OnUpdatedListener _onUpdatedListener; // 后台校验发现内容变化时的回调
+
+    /**
+     * 缓存内容的元数据，以JSON格式保存，需要公开供序列化使用
+     */
+    public static class Meta {
+        public String MIME;
+        public String Encoding;
+        public String ETag;
+        public String LastModified; // 服务器返回的原始值
+        public String Stamp; // 写入时的版本标识
+        public String Hash; // 内容的SHA-1，用于判断没有校验信息的响应是否真的发生了变化
+    }
+
+    /**
+     * 单个URL规则的统计信息
+     */
+    static class PatternStatistics {
+        final AtomicLong Hits = new AtomicLong();
+        final AtomicLong Misses = new AtomicLong();
+        final AtomicLong Updates = new AtomicLong(); // 后台校验发现内容变化的次数
+        final AtomicLong NetworkMillis = new AtomicLong(); // 后台请求的总耗时
+        final AtomicLong NetworkCount = new AtomicLong();
+        final AtomicLong SavedMillis = new AtomicLong(); // 命中时节省的时间，以后台请求的平均耗时估算
+    }
+
+    /**
+     * 构造函数
+     *
+     * @param directory 缓存目录，位于应用私有存储中
+     * @param maxBytes  允许占用的最大字节数
+     * @param patterns  白名单，每行一个正则表达式，匹配完整的URL
+     */
+    public StaleWhileRevalidateCache(File directory, long maxBytes, String patterns) {
+        _store = DiskLruCache.open(directory, maxBytes);
+        _stampFile = new File(directory.getParentFile(), directory.getName() + STAMP_SUFFIX);
+        _patterns = parsePatterns(patterns);
+        _statistics = new PatternStatistics[_patterns.size()];
+        for (int i = 0; i < _statistics.length; i++) {
+            _statistics[i] = new PatternStatistics();
+        }
+    }
+
+    /**
+     * 是否配置了白名单
+     */
+    public boolean isEnabled() {
+        return !_patterns.isEmpty();
+    }
+
+    /**
+     * 处理请求，只处理白名单内的GET请求
+     *
+     * @param request 浏览器的请求
+     * @return 命中时返回本地内容，否则返回空引用，由浏览器自行请求
+     */
+    public WebResourceResponse intercept(WebResourceRequest request) {
+
+        if (!"GET".equalsIgnoreCase(request.getMethod())) return null;
+
+        String url = request.getUrl().toString();
+        int index = match(url);
+        if (index < 0) return null;
+
+        // 携带Authorization的请求与具体的凭据相关，不缓存
+        Map<String, String> requestHeaders = request.getRequestHeaders();
+        if (hasHeader(requestHeaders, "Authorization")) return null;
+
+        PatternStatistics statistics = _statistics[index];
+
+        // Cookie需要在当前线程读取，保证与浏览器的请求一致
+        String cookie = CookieManager.getInstance().getCookie(url);
+        String key = toKey(url, cookie);
+
+        Meta meta = readMeta(key);
+        File body = meta == null ? null : _store.get(KEY_PREFIX_BODY + key);
+        if (meta == null || body == null || (_stamp != null && !_stamp.equals(meta.Stamp))) {
+            statistics.Misses.incrementAndGet();
+            revalidate(url, key, requestHeaders, cookie, null, statistics);
+            return null;
+        }
+
+        try {
+            InputStream data = new FileInputStream(body);
+            statistics.Hits.incrementAndGet();
+            long count = statistics.NetworkCount.get();
+            if (count > 0) statistics.SavedMillis.addAndGet(statistics.NetworkMillis.get() / count);
+
+            revalidate(url, key, requestHeaders, cookie, meta, statistics);
+
+            // 内容随时可能变化，不允许浏览器再次缓存
+            Map<String, String> headers = new HashMap<>();
+            headers.put("Cache-Control", "no-cache");
+            headers.put("Content-Length", String.valueOf(body.length()));
+            if (meta.ETag != null) headers.put("ETag", meta.ETag);
+            if (meta.LastModified != null) headers.put("Last-Modified", meta.LastModified);
+            return new WebResourceResponse(meta.MIME, meta.Encoding, 200, "OK", headers, data);
+        } catch (IOException e) {
+            HACLog.e(LOG_TAG, "Error on loading cache for : {} Error : {}", url, e);
+            return null;
+        }
+    }
+
+    /**
+     * 预取白名单内的请求，在调用方的线程中同步执行
+     *
+     * @param url 请求地址
+     * @return 从网络下载的字节数（包括写入失败的情况），已有可用的缓存时为0，不在白名单内时为-1
+     */
+    public long prefetch(String url) {
+
+        int index = match(url);
+        if (index < 0) return -1;
+
+        String cookie = CookieManager.getInstance().getCookie(url);
+        String key = toKey(url, cookie);
+
+        Meta meta = readMeta(key);
+        if (meta != null && _store.get(KEY_PREFIX_BODY + key) != null && (_stamp == null || _stamp.equals(meta.Stamp))) return 0;
+
+        if (!_inFlight.add(key)) return 0;
+        try {
+            return fetch(url, key, null, cookie, null, _stamp, _statistics[index]);
+        } finally {
+            _inFlight.remove(key);
+        }
+    }
+
+    /**
+     * 通知当前服务器的版本标识，版本变化时作废全部缓存
+     *
+     * @param stamp 版本标识
+     */
+    public void onVersionStamp(String stamp) {
+        if (stamp == null || stamp.equals(_stamp)) return;
+
+        synchronized (this) {
+            if (stamp.equals(_stamp)) return;
+
+            String previous = null;
+            try {
+                if (_stampFile.exists()) previous = FileUtils.readFileToString(_stampFile, StandardCharsets.UTF_8);
+                if (!stamp.equals(previous)) {
+                    if (previous != null) {
+                        _store.clear();
+                        HACLog.v(LOG_TAG, "Server version changed from {} to {} , cache cleared", previous, stamp);
+                    }
+                    FileUtils.writeStringToFile(_stampFile, stamp, StandardCharsets.UTF_8);
+                }
+            } catch (IOException e) {
+                HACLog.e(LOG_TAG, "Error on saving version stamp : {}", e);
+            }
+            _stamp = stamp;
+        }
+    }
+
+    /**
+     * 设置后台校验发现内容变化时的回调，回调在后台线程中执行
+     *
+     * @param listener 回调，为空意味着取消
+     */
+    public void setOnUpdatedListener(OnUpdatedListener listener) {
+        _onUpdatedListener = listener;
+    }
+
+    /**
+     * 获取各规则的统计信息，用于日志
+     */
+    public String getStatistics() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < _patterns.size(); i++) {
+            PatternStatistics statistics = _statistics[i];
+            long hits = statistics.Hits.get();
+            long total = hits + statistics.Misses.get();
+            if (sb.length() > 0) sb.append("; ");
+            sb.append(_patterns.get(i).pattern())
+                    .append(" : hits=").append(hits)
+                    .append(", misses=").append(statistics.Misses.get())
+                    .append(", hitRate=").append(total == 0 ? 0 : hits * 100 / total).append("%")
+                    .append(", updates=").append(statistics.Updates.get())
+                    .append(", savedMs=").append(statistics.SavedMillis.get());
+        }
+        return sb.toString();
+    }
+
+    /**
+     * 在后台请求服务器，有缓存时发起条件请求
+     *
+     * @param url            请求地址
+     * @param key            缓存键，见toKey
+     * @param requestHeaders 浏览器的请求头
+     * @param cookie         浏览器请求时的Cookie
+     * @param meta           已有缓存的元数据，没有缓存时为空引用
+     * @param statistics     所属规则的统计信息
+     */
+    private void revalidate(String url, String key, Map<String, String> requestHeaders, String cookie, Meta meta, PatternStatistics statistics) {
+        if (!_inFlight.add(key)) return;
+
+        String stamp = _stamp;
+
+        __revalidator.execute(() -> {
+            try {
+                fetch(url, key, requestHeaders, cookie, meta, stamp, statistics);
+            } finally {
+                _inFlight.remove(key);
+            }
+        });
+    }
+
+    /**
+     * 请求服务器并更新缓存，只缓存原地址上的200响应
+     *
+     * @return 从网络下载的字节数，无论是否写入缓存；304或没有下载内容时为0
+     */
+    private long fetch(String url, String key, Map<String, String> requestHeaders, String cookie, Meta meta, String stamp, PatternStatistics statistics) {
+
+        long start = SystemClock.elapsedRealtime();
+        HttpURLConnection connection = null;
+        CountingInputStream counter = null;
+        try {
+            connection = (HttpURLConnection) new URL(url).openConnection();
+            connection.setConnectTimeout(CONNECT_TIMEOUT);
+            connection.setReadTimeout(READ_TIMEOUT);
+            connection.setInstanceFollowRedirects(false); // 跟随重定向会把其他地址的内容保存在原地址下，3xx不缓存，由浏览器自行处理
+
+            if (requestHeaders != null) {
+                for (Map.Entry<String, String> header : requestHeaders.entrySet()) {
+                    if (isForwardable(header.getKey())) connection.setRequestProperty(header.getKey(), header.getValue());
+                }
+            }
+            if (cookie != null) connection.setRequestProperty("Cookie", cookie);
+            if (meta != null) {
+                if (meta.ETag != null) connection.setRequestProperty("If-None-Match", meta.ETag);
+                if (meta.LastModified != null) connection.setRequestProperty("If-Modified-Since", meta.LastModified);
+            }
+
+            int code = connection.getResponseCode();
+
+            statistics.NetworkMillis.addAndGet(SystemClock.elapsedRealtime() - start);
+            statistics.NetworkCount.incrementAndGet();
+
+            if (code == HttpURLConnection.HTTP_NOT_MODIFIED) return 0;
+
+            String cacheControl = connection.getHeaderField("Cache-Control");
+            if (code != HttpURLConnection.HTTP_OK || !isStorable(cacheControl)) {
+                HACLog.w(LOG_TAG, "Skip caching for : {} , status : {}", url, code);
+                return 0;
+            }
+
+            Meta updated = new Meta();
+            updated.ETag = connection.getHeaderField("ETag");
+            updated.LastModified = connection.getHeaderField("Last-Modified");
+            updated.Stamp = stamp;
+            parseContentType(connection.getContentType(), updated);
+
+            File body;
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            counter = new CountingInputStream(connection.getInputStream());
+            try (InputStream in = new DigestInputStream(counter, digest)) {
+                body = _store.put(KEY_PREFIX_BODY + key, in);
+                if (body == null) return counter.getByteCount();
+            }
+            updated.Hash = toHex(digest.digest());
+            _store.put(KEY_PREFIX_META + key, new ByteArrayInputStream(JSONObject.toJSONString(updated).getBytes(StandardCharsets.UTF_8)));
+
+            if (meta != null && !updated.Hash.equals(meta.Hash)) {
+                statistics.Updates.incrementAndGet();
+                OnUpdatedListener listener = _onUpdatedListener;
+                if (listener != null) listener.onUpdated(url);
+            }
+            HACLog.v(LOG_TAG, "Cache stored for : {}", url);
+            return counter.getByteCount();
+
+        } catch (IOException | NoSuchAlgorithmException e) {
+            HACLog.e(LOG_TAG, "Error on revalidating cache for : {} Error : {}", url, e);
+            return counter == null ? 0 : counter.getByteCount(); // 下载中途失败时，已下载的部分同样计入流量
+        } finally {
+            if (connection != null) connection.disconnect();
+        }
+    }
+
+    /**
+     * 读取缓存的元数据
+     */
+    private Meta readMeta(String key) {
+        File file = _store.get(KEY_PREFIX_META + key);
+        if (file == null) return null;
+        try {
+            return JSONObject.parseObject(FileUtils.readFileToString(file, StandardCharsets.UTF_8), Meta.class);
+        } catch (IOException | RuntimeException e) {
+            HACLog.e(LOG_TAG, "Error on reading cache meta for : {} Error : {}", key, e);
+            return null;
+        }
+    }
+
+    /**
+     * 生成缓存键，同一URL按Cookie区分，避免切换用户或会话后读到其他人的内容
+     * 只保存Cookie的摘要，不在磁盘上留下会话信息
+     */
+    static String toKey(String url, String cookie) {
+        if (cookie == null || cookie.isEmpty()) return url;
+        try {
+            return url + "#" + toHex(MessageDigest.getInstance("SHA-1").digest(cookie.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * 响应是否允许缓存，private的内容只属于当前用户，不写入共享的磁盘缓存
+     */
+    static boolean isStorable(String cacheControl) {
+        if (cacheControl == null) return true;
+        String lower = cacheControl.toLowerCase();
+        return !lower.contains("no-store") && !lower.contains("private");
+    }
+
+    /**
+     * 请求头中是否包含指定的字段，字段名不区分大小写
+     */
+    static boolean hasHeader(Map<String, String> headers, String name) {
+        if (headers == null) return false;
+        for (String key : headers.keySet()) {
+            if (name.equalsIgnoreCase(key)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * 查找匹配的规则
+     *
+     * @param url 请求地址
+     * @return 规则的序号，没有匹配时返回-1
+     */
+    private int match(String url) {
+        for (int i = 0; i < _patterns.size(); i++) {
+            if (_patterns.get(i).matcher(url).matches()) return i;
+        }
+        return -1;
+    }
+
+    /**
+     * 是否将浏览器的请求头转发给服务器
+     * 压缩和条件请求由本类自行处理，转发会导致缓存的内容不完整或无法解码
+     */
+    static boolean isForwardable(String name) {
+        String lower = name.toLowerCase();
+        return !lower.equals("accept-encoding") && !lower.equals("range") && !lower.startsWith("if-") && !lower.equals("cookie");
+    }
+
+    /**
+     * 解析Content-Type，如：application/json; charset=utf-8
+     */
+    static void parseContentType(String contentType, Meta meta) {
+        meta.MIME = "text/plain";
+        meta.Encoding = "UTF-8";
+        if (contentType == null) return;
+
+        String[] parts = contentType.split(";");
+        if (!parts[0].trim().isEmpty()) meta.MIME = parts[0].trim();
+        for (int i = 1; i < parts.length; i++) {
+            String part = parts[i].trim();
+            if (part.toLowerCase().startsWith("charset=")) {
+                meta.Encoding = part.substring("charset=".length()).replace("\"", "");
+            }
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            sb.append(Character.forDigit((b >> 4) & 0xF, 16));
+            sb.append(Character.forDigit(b & 0xF, 16));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * 解析白名单，忽略空行和无效的正则表达式
+     */
+    static List<Pattern> parsePatterns(String patterns) {
+        List<Pattern> result = new ArrayList<>();
+        if (patterns == null) return result;
+
+        for (String line : patterns.split("\n")) {
+            line = line.trim();
+            if (line.isEmpty()) continue;
+            try {
+                result.add(Pattern.compile(line));
+            } catch (PatternSyntaxException e) {
+                HACLog.e(LOG_TAG, "Invalid URL pattern skipped : {} Error : {}", line, e);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 后台校验发现已缓存的内容发生变化
+     */
+    public interface OnUpdatedListener {
+        void onUpdated(String url);
+    }
+}
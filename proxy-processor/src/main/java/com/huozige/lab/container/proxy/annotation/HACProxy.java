@@ -0,0 +1,30 @@
+package com.huozige.lab.container.proxy.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 标记可以注册到页面的JS桥，编译时由ProxyIndexProcessor收集，生成ProxyIndex
+ * 被标记的类必须继承AbstractProxy，有无参的公共构造函数，且与AbstractProxy位于同一个包中
+ */
+@Retention(RetentionPolicy.SOURCE)
+@Target(ElementType.TYPE)
+public @interface HACProxy {
+
+    /**
+     * 注册到页面时使用的名称，如：index，需要与getName()的返回值一致
+     */
+    String name();
+
+    /**
+     * 注册的顺序，从小到大排列，同时决定处理Activity调用结果的顺序
+     */
+    int order();
+
+    /**
+     * 首次提供此桥的HAC版本，如：1.8.0，未知时为空
+     */
+    String since() default "";
+}
@@ -0,0 +1,271 @@
+package com.huozige.lab.container.proxy.processor;
+
+import com.huozige.lab.container.proxy.annotation.HACProxy;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.PrimitiveType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+
+/**
+ * 收集标记了@HACProxy的JS桥，生成ProxyIndex：
+ * 1. 每个桥的名称、顺序、版本和可被页面调用（标记了JavascriptInterface）的方法
+ * 2. 创建桥的工厂，ProxyRegister不再需要手工维护列表
+ * 3. 按方法序号直接调用桥的方法的分发器，ProxyHost转发调用时不再需要反射
+ * 名称重复、同名方法参数个数相同（页面无法区分）等问题在编译时报错
+ */
+@SupportedAnnotationTypes("com.huozige.lab.container.proxy.annotation.HACProxy")
+public class ProxyIndexProcessor extends AbstractProcessor {
+
+    static final String ABSTRACT_PROXY = "AbstractProxy";
+    static final String GENERATED_CLASS = "ProxyIndex";
+    static final String JAVASCRIPT_INTERFACE = "android.webkit.JavascriptInterface";
+
+    private final List<ProxyInfo> _proxies = new ArrayList<>(); // 已收集的桥
+    private boolean _generated = false;
+
+    /**
+     * 一个桥的信息
+     */
+    static class ProxyInfo {
+        TypeElement Type;
+        String Name;
+        int Order;
+        String Since;
+        List<ExecutableElement> Methods;
+    }
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+
+        for (Element element : roundEnv.getElementsAnnotatedWith(HACProxy.class)) {
+            if (_generated) {
+                error(element, "@HACProxy classes must not be generated by other annotation processors");
+                continue;
+            }
+            ProxyInfo proxy = collect(element);
+            if (proxy != null) _proxies.add(proxy);
+        }
+
+        if (roundEnv.processingOver() || _generated || _proxies.isEmpty()) return true;
+
+        _proxies.sort(Comparator.<ProxyInfo>comparingInt(p -> p.Order).thenComparing(p -> p.Name));
+        if (validate()) generate();
+        _generated = true;
+        return true;
+    }
+
+    /**
+     * 读取桥的注解和方法，不满足要求时报错并返回空引用
+     */
+    private ProxyInfo collect(Element element) {
+
+        if (element.getKind() != ElementKind.CLASS) {
+            error(element, "@HACProxy can only be applied to classes");
+            return null;
+        }
+
+        TypeElement type = (TypeElement) element;
+        if (!type.getModifiers().contains(Modifier.PUBLIC) || type.getModifiers().contains(Modifier.ABSTRACT)) {
+            error(type, "@HACProxy class must be public and not abstract");
+            return null;
+        }
+        if (!hasPublicNoArgConstructor(type)) {
+            error(type, "@HACProxy class must have a public no-arg constructor");
+            return null;
+        }
+
+        String packageName = processingEnv.getElementUtils().getPackageOf(type).getQualifiedName().toString();
+        TypeElement abstractProxy = processingEnv.getElementUtils().getTypeElement(packageName + "." + ABSTRACT_PROXY);
+        if (abstractProxy == null || !processingEnv.getTypeUtils().isSubtype(type.asType(), abstractProxy.asType())) {
+            error(type, "@HACProxy class must extend " + ABSTRACT_PROXY + " in the same package");
+            return null;
+        }
+
+        HACProxy annotation = type.getAnnotation(HACProxy.class);
+        ProxyInfo proxy = new ProxyInfo();
+        proxy.Type = type;
+        proxy.Name = annotation.name();
+        proxy.Order = annotation.order();
+        proxy.Since = annotation.since();
+        proxy.Methods = new ArrayList<>();
+
+        // 包括继承的方法，与WebView查找方法的范围一致
+        for (ExecutableElement method : ElementFilter.methodsIn(processingEnv.getElementUtils().getAllMembers(type))) {
+            if (method.getModifiers().contains(Modifier.PUBLIC) && !method.getModifiers().contains(Modifier.STATIC) && isJavascriptInterface(method)) {
+                proxy.Methods.add(method);
+            }
+        }
+        proxy.Methods.sort(Comparator.<ExecutableElement, String>comparing(m -> m.getSimpleName().toString()).thenComparingInt(m -> m.getParameters().size()));
+        return proxy;
+    }
+
+    /**
+     * 检查名称和方法是否冲突，全部桥是否位于同一个包中
+     */
+    private boolean validate() {
+        boolean valid = true;
+        Set<String> names = new HashSet<>();
+        String packageName = getPackageName(_proxies.get(0).Type);
+
+        for (ProxyInfo proxy : _proxies) {
+            if (proxy.Name.isEmpty() || !names.add(proxy.Name)) {
+                error(proxy.Type, "Duplicate or empty proxy name : \"" + proxy.Name + "\"");
+                valid = false;
+            }
+            if (!getPackageName(proxy.Type).equals(packageName)) {
+                error(proxy.Type, "All @HACProxy classes must be in package " + packageName);
+                valid = false;
+            }
+
+            // 页面调用时只能按名称和参数个数区分方法
+            Set<String> signatures = new HashSet<>();
+            for (ExecutableElement method : proxy.Methods) {
+                if (!signatures.add(method.getSimpleName() + "#" + method.getParameters().size())) {
+                    error(method, "Overloaded @JavascriptInterface methods with the same parameter count are ambiguous for pages");
+                    valid = false;
+                }
+            }
+        }
+        return valid;
+    }
+
+    /**
+     * 生成ProxyIndex
+     */
+    private void generate() {
+        String packageName = getPackageName(_proxies.get(0).Type);
+
+        StringBuilder sb = new StringBuilder();
+        sb.append("package ").append(packageName).append(";\n\n");
+        sb.append("import java.util.Arrays;\n");
+        sb.append("import java.util.Collections;\n");
+        sb.append("import java.util.List;\n\n");
+        sb.append("/**\n * JS桥的索引，由ProxyIndexProcessor根据@HACProxy生成，请勿修改\n */\n");
+        sb.append("final class ").append(GENERATED_CLASS).append(" {\n\n");
+        sb.append("    /**\n     * 全部桥的元数据，按注册顺序排列\n     */\n");
+        sb.append("    static final List<ProxyMetadata> PROXIES = Collections.unmodifiableList(Arrays.asList(");
+
+        for (int p = 0; p < _proxies.size(); p++) {
+            ProxyInfo proxy = _proxies.get(p);
+            String className = proxy.Type.getSimpleName().toString();
+
+            sb.append(p == 0 ? "\n" : ",\n");
+            sb.append("            new ProxyMetadata(").append(literal(proxy.Name)).append(", ").append(proxy.Order).append(", ").append(literal(proxy.Since)).append(", ").append(className).append("::new,\n");
+            sb.append("                    new ProxyMetadata.MethodInfo[]{");
+            for (int m = 0; m < proxy.Methods.size(); m++) {
+                ExecutableElement method = proxy.Methods.get(m);
+                sb.append(m == 0 ? "\n" : ",\n");
+                sb.append("                            new ProxyMetadata.MethodInfo(").append(literal(method.getSimpleName().toString())).append(", ").append(classLiteral(method.getReturnType()));
+                for (VariableElement parameter : method.getParameters()) {
+                    sb.append(", ").append(classLiteral(parameter.asType()));
+                }
+                sb.append(')');
+            }
+            sb.append("\n                    },\n");
+
+            sb.append("                    (proxy, method, args) -> {\n");
+            sb.append("                        ").append(className).append(" target = (").append(className).append(") proxy;\n");
+            sb.append("                        switch (method) {\n");
+            for (int m = 0; m < proxy.Methods.size(); m++) {
+                ExecutableElement method = proxy.Methods.get(m);
+                boolean isVoid = method.getReturnType().getKind() == TypeKind.VOID;
+
+                sb.append("                            case ").append(m).append(":\n");
+                sb.append("                                ").append(isVoid ? "" : "return ").append("target.").append(method.getSimpleName()).append('(');
+                List<? extends VariableElement> parameters = method.getParameters();
+                for (int i = 0; i < parameters.size(); i++) {
+                    if (i > 0) sb.append(", ");
+                    sb.append('(').append(castType(parameters.get(i).asType())).append(") args[").append(i).append(']');
+                }
+                sb.append(");\n");
+                if (isVoid) sb.append("                                return null;\n");
+            }
+            sb.append("                            default:\n");
+            sb.append("                                throw new NoSuchMethodException(").append(literal(proxy.Name + "#")).append(" + method);\n");
+            sb.append("                        }\n");
+            sb.append("                    })");
+        }
+
+        sb.append("\n    ));\n\n");
+        sb.append("    private ").append(GENERATED_CLASS).append("() {\n    }\n");
+        sb.append("}\n");
+
+        Element[] origins = new Element[_proxies.size()];
+        for (int i = 0; i < origins.length; i++) origins[i] = _proxies.get(i).Type;
+
+        try (Writer writer = processingEnv.getFiler().createSourceFile(packageName + "." + GENERATED_CLASS, origins).openWriter()) {
+            writer.write(sb.toString());
+        } catch (IOException e) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "Error on generating " + GENERATED_CLASS + " : " + e);
+        }
+    }
+
+    private boolean hasPublicNoArgConstructor(TypeElement type) {
+        for (ExecutableElement constructor : ElementFilter.constructorsIn(type.getEnclosedElements())) {
+            if (constructor.getParameters().isEmpty() && constructor.getModifiers().contains(Modifier.PUBLIC)) return true;
+        }
+        return false;
+    }
+
+    private static boolean isJavascriptInterface(ExecutableElement method) {
+        for (AnnotationMirror annotation : method.getAnnotationMirrors()) {
+            if (((TypeElement) annotation.getAnnotationType().asElement()).getQualifiedName().contentEquals(JAVASCRIPT_INTERFACE)) return true;
+        }
+        return false;
+    }
+
+    private String getPackageName(TypeElement type) {
+        return processingEnv.getElementUtils().getPackageOf(type).getQualifiedName().toString();
+    }
+
+    /**
+     * 类型的class字面量，如：String.class、int.class
+     */
+    private String classLiteral(TypeMirror type) {
+        return processingEnv.getTypeUtils().erasure(type) + ".class";
+    }
+
+    /**
+     * 将Object参数转换为方法参数时使用的类型，基础类型使用对应的包装类型，由编译器拆箱
+     */
+    private String castType(TypeMirror type) {
+        if (type.getKind().isPrimitive()) {
+            return processingEnv.getTypeUtils().boxedClass((PrimitiveType) type).getQualifiedName().toString();
+        }
+        return processingEnv.getTypeUtils().erasure(type).toString();
+    }
+
+    private static String literal(String value) {
+        return "\"" + value.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+    }
+
+    private void error(Element element, String message) {
+        processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, message, element);
+    }
+}